@@ -32,6 +32,13 @@ import java.io.IOException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.DoubleStream;
 import java.util.stream.Stream;
 
@@ -42,25 +49,48 @@ public class Botster extends PircBot {
     public static final int IGNORE_TIME = 60000;
     public static final int RECONNECT_DELAY = 10000;
     public static final int REJOIN_DELAY = 10000;
+    public static final int SUGGESTION_DELAY = 30000;
+    public static final int MIN_SUGGESTION_LENGTH = 3;
+    public static final int REQUEST_THREADS = 8;
+    public static final int MAX_PENDING_REQUESTS = 5;
+    public static final int MAX_REPLY_LINES = 4;
 
-    private final Map<String, String> lastLines = new HashMap<>();
+    /**
+     * The threads requests are answered on, shared by the Botsters of all
+     * networks, so a slow command never holds up the thread reading from the
+     * server.
+     */
+    private static final ExecutorService requestExecutor = Executors.newFixedThreadPool(REQUEST_THREADS, (runnable) -> {
+        final Thread thread = new Thread(runnable, "Botster request");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String network;
     private final Map<String, String> channels;
+    private final Set<String> suggestingChannels;
+    private final Map<String, Long> lastSuggestion = new ConcurrentHashMap<>(); // channel -> timestamp of last suggestion
+    private final Map<String, CompletableFuture<Void>> lastRequests = new HashMap<>(); // channel -> last request answered or waiting
+    private final Map<String, Integer> pendingRequests = new HashMap<>(); // channel -> number of requests answered or waiting
 
     private final List<String> privilegedUsers;
 
-    private final Map<String, Long> lastMessage = new HashMap<>(); // user -> timestamp of last msg
-    private final Map<String, Long> ignoredUsers = new HashMap<>(); // user -> timestamp of the ignore expiration
+    private final FloodControl floodControl = new FloodControl();
+    private final RaidDetector raidDetector = new RaidDetector();
 
     private final String autoSendTarget;
     private final String autoSendMessage;
     private final CommandSender cmdSender;
 
-    private Map<String, IRCCommand> commands;
-    private Set<String> publicCommands;
-    private Set<String> restrictedCommands;
+    /**
+     * The commands of this bot, replaced as a whole when they are reloaded.
+     */
+    private volatile CommandTable commandTable = new CommandTable();
 
-    private Botster(final Map<String, String> channels, final List<String> privilegedUsers, final String autoSendTarget, final String autoSendMessage) {
+    private Botster(final String network, final Map<String, String> channels, final Set<String> suggestingChannels, final List<String> privilegedUsers, final String autoSendTarget, final String autoSendMessage) {
+        this.network = network;
         this.channels = channels;
+        this.suggestingChannels = suggestingChannels;
         this.privilegedUsers = privilegedUsers;
         this.autoSendTarget = autoSendTarget;
         this.autoSendMessage = autoSendMessage;
@@ -109,8 +139,9 @@ public class Botster extends PircBot {
                     continue;
 
                 final NamedNodeMap attributes = child.getAttributes();
-                //final String serverName = attributes.getNamedItem("name").getNodeValue();
                 final String serverHost = attributes.getNamedItem("host").getNodeValue();
+                final Node serverName = attributes.getNamedItem("name");
+                final String network = serverName != null ? serverName.getNodeValue() : serverHost;
                 int serverPort;
                 try {
                     serverPort = Integer.parseInt(attributes.getNamedItem("port").getNodeValue());
@@ -121,6 +152,7 @@ public class Botster extends PircBot {
                 String autoSendTarget = null;
                 String autoSendMessage = null;
                 final Map<String, String> channels = new HashMap<>();
+                final Set<String> suggestingChannels = new HashSet<>();
                 final List<String> privilegedUsers = new ArrayList<>();
 
                 final NodeList serverChildren = child.getChildNodes();
@@ -131,20 +163,20 @@ public class Botster extends PircBot {
                         autoSendTarget = autoSendAttributes.getNamedItem("target").getNodeValue();
                         autoSendMessage = autoSendAttributes.getNamedItem("message").getNodeValue();
                     } else if (serverChild.getNodeName().equals("channels")) {
-                        handleChannel(channels, serverChild);
+                        handleChannel(channels, suggestingChannels, serverChild);
                     } else if (serverChild.getNodeName().equals(("privilegedUsers"))) {
                         handlePrivilegedUser(privilegedUsers, serverChild);
                     }
                 }
 
-                startBot(serverHost, serverPort, botName, autoSendTarget, autoSendMessage, channels, privilegedUsers);
+                startBot(network, serverHost, serverPort, botName, autoSendTarget, autoSendMessage, channels, suggestingChannels, privilegedUsers);
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
-    private static void handleChannel(final Map<String, String> channels, final Node serverChild) {
+    private static void handleChannel(final Map<String, String> channels, final Set<String> suggestingChannels, final Node serverChild) {
         final NodeList channelChildren = serverChild.getChildNodes();
 
         for (int k = 0; k < channelChildren.getLength(); k++) {
@@ -156,6 +188,10 @@ public class Botster extends PircBot {
             final String channelName = channelAttributes.getNamedItem("name").getNodeValue();
             final String channelPass = channelAttributes.getNamedItem("password").getNodeValue();
             channels.put(channelName, channelPass);
+
+            final Node suggest = channelAttributes.getNamedItem("suggest");
+            if (suggest != null && Boolean.parseBoolean(suggest.getNodeValue()))
+                suggestingChannels.add(channelName);
         }
     }
 
@@ -173,8 +209,8 @@ public class Botster extends PircBot {
         }
     }
 
-    private static void startBot(final String serverHost, final int serverPort, final String botName, final String autoSendTarget, final String autoSendMessage, final Map<String, String> channels, final List<String> privilegedUsers) throws IOException, IrcException {
-        final Botster bot = new Botster(channels, privilegedUsers, autoSendTarget, autoSendMessage);
+    private static void startBot(final String network, final String serverHost, final int serverPort, final String botName, final String autoSendTarget, final String autoSendMessage, final Map<String, String> channels, final Set<String> suggestingChannels, final List<String> privilegedUsers) throws IOException, IrcException {
+        final Botster bot = new Botster(network, channels, suggestingChannels, privilegedUsers, autoSendTarget, autoSendMessage);
         bot.setName(botName);
         bot.setLogin(botName);
         bot.setFinger(botName);
@@ -184,22 +220,30 @@ public class Botster extends PircBot {
         bot.connect(serverHost, serverPort);
     }
 
+    /**
+     * Loads all commands anew. They are loaded into a new CommandTable, which
+     * only replaces the current one once it is complete, so lines said in the
+     * meantime are still answered by the old commands.
+     */
     public void reloadCommands() {
-        this.commands = new HashMap<>();
-        this.publicCommands = new HashSet<>();
-        this.restrictedCommands = new HashSet<>();
-        loadCommand("Admin");
-        loadCommand("API");
-        loadCommand("Exec");
-        loadCommand("Search");
-        loadCommand("Factoid");
-        loadCommand("Translate");
-        loadCommand("Help");
-        System.out.println("Loaded public commands: " + publicCommands);
-        System.out.println("Loaded restricted commands: " + restrictedCommands);
+        final CommandTable table = new CommandTable();
+        loadCommand(table, "Admin");
+        loadCommand(table, "API");
+        loadCommand(table, "Exec");
+        loadCommand(table, "Search");
+        loadCommand(table, "Factoid");
+        loadCommand(table, "Translate");
+        loadCommand(table, "Help");
+        commandTable = table;
+        System.out.println("Loaded public commands: " + table.getPublicCommands());
+        System.out.println("Loaded restricted commands: " + table.getRestrictedCommands());
     }
 
     public Set<String> loadCommand(final String name) {
+        return loadCommand(commandTable, name);
+    }
+
+    private Set<String> loadCommand(final CommandTable table, final String name) {
         final Set<String> ret = new HashSet<>();
         try {
             final URL u = new File("build/classes").toURI().toURL();
@@ -207,31 +251,102 @@ public class Botster extends PircBot {
             final Class<?> cl = ucl.loadClass("commands." + name + "Command");
             final IRCCommand com = (IRCCommand) cl.newInstance();
             for (final String s : com.getCommands()) {
-                if (!commands.containsKey(s)) {
-                    this.commands.put(s, com);
-                    this.publicCommands.add(s);
+                if (table.register(s, com))
                     ret.add(s);
-                }
             }
             for (final String s : com.getRestrictedCommands()) {
-                if (!commands.containsKey(s)) {
-                    this.commands.put(s, com);
-                    this.restrictedCommands.add(s);
+                if (table.registerRestricted(s, com))
                     ret.add(name);
-                }
             }
+            com.setBot(this);
         } catch (Exception e) {
             e.printStackTrace();
         }
         return ret;
     }
 
+    /**
+     * Registers a public command, unless there already is a command with that
+     * name. Unlike reloadCommands, this leaves all other commands alone.
+     *
+     * @param name    the name of the command
+     * @param command the IRCCommand that replies to it
+     * @return true if the command was registered
+     */
+    public boolean registerCommand(final String name, final IRCCommand command) {
+        return commandTable.register(name, command);
+    }
+
+    /**
+     * Registers a restricted command, unless there already is a command with
+     * that name.
+     *
+     * @param name    the name of the command
+     * @param command the IRCCommand that replies to it
+     * @return true if the command was registered
+     */
+    public boolean registerRestrictedCommand(final String name, final IRCCommand command) {
+        return commandTable.registerRestricted(name, command);
+    }
+
+    /**
+     * Unregisters a public or restricted command, if it is registered to the
+     * given IRCCommand.
+     *
+     * @param name    the name of the command
+     * @param command the IRCCommand that replies to it
+     * @return true if the command was unregistered
+     */
+    public boolean unregisterCommand(final String name, final IRCCommand command) {
+        return commandTable.unregister(name, command);
+    }
+
+    /**
+     * Suggests a public command one typo away from a misspelled one, in
+     * channels that have suggestions turned on with suggest="true" in
+     * servers.xml. At most one suggestion is made per SUGGESTION_DELAY
+     * milliseconds in each channel.
+     *
+     * Only commands that are available in the channel are suggested, see
+     * IRCCommand.isAvailable.
+     *
+     * @param channel the channel the misspelled command was given in
+     * @param name    the misspelled command, without prefix
+     * @param filter  which commands may be suggested, or null for any
+     * @return the name of the suggested command, or null
+     */
+    public String suggestCommand(final String channel, final String name, final Predicate<String> filter) {
+        if (!suggestingChannels.contains(channel) || name.length() < MIN_SUGGESTION_LENGTH)
+            return null;
+
+        final Long last = lastSuggestion.get(channel);
+        if (last != null && System.currentTimeMillis() - last < SUGGESTION_DELAY)
+            return null;
+
+        final CommandTable table = commandTable;
+        final String suggestion = table.getPublicNames().closest(name, s -> {
+            final IRCCommand command = table.getCommands().get(s);
+            return command != null && command.isAvailable(s, channel) && (filter == null || filter.test(s));
+        });
+        if (suggestion != null)
+            lastSuggestion.put(channel, System.currentTimeMillis());
+        return suggestion;
+    }
+
+    /**
+     * Returns whether there is a public or restricted command with the given
+     * name, in any case.
+     */
+    public boolean hasCommand(final String name) {
+        return commandTable.getCommands().contains(name);
+    }
+
     public Set<String> getPublicCommands() {
-        return publicCommands;
+        return commandTable.getPublicCommands();
     }
 
     public Set<String> getRestrictedCommands() {
-        return restrictedCommands;
+        return commandTable.getRestrictedCommands();
     }
 
     @Override
@@ -244,59 +359,184 @@ public class Botster extends PircBot {
         if (ignoreIfRepeated(message, userMask))
             return;
 
-        lastMessage.put(userMask, System.currentTimeMillis());
-        lastLines.put(userMask, message);
+        if (ignoreIfRaid(channel, message, userMask))
+            return;
+
+        floodControl.lineSaid(userMask, message);
 
-        if (message.startsWith(PREFIX) || message.startsWith("!")) {
-            final String[] splitMessage = message.split("\\s+", 2);
-            final String commandName = splitMessage[0].substring(1);
+        if (message.isEmpty() || !isCommandPrefix(message.charAt(0)))
+            return;
 
-            if (commands.containsKey(commandName)) {
-                final IRCCommand command = commands.get(commandName);
-                command.setNames(nickName, login, hostName, channel);
-                command.setBot(this);
+        int nameEnd = 1;
+        while (nameEnd < message.length() && !isWhitespace(message.charAt(nameEnd)))
+            nameEnd++;
+        if (nameEnd == 1)
+            return;
 
-                final String reply = (splitMessage.length > 1) ? command.getReply(commandName, splitMessage[1]) : command.getReply(commandName, "");
+        final CommandTable table = commandTable;
+        final String commandName = resolveCommand(table, message, nameEnd);
+        final IRCCommand command = commandName == null ? null : table.getCommands().get(commandName);
+        if (command == null) {
+            final String suggestion = suggestCommand(channel, message.substring(1, nameEnd), null);
+            if (suggestion != null)
+                cmdSender.sendMessage(channel, String.format("%s, did you mean %s%s?", nickName, PREFIX, suggestion));
+            return;
+        }
 
-                if (reply != null) {
-                    final Scanner scan = new Scanner(reply);
-                    int count = 0;
-                    String line;
-                    while (scan.hasNext() && count <= 3 && ((line = scan.nextLine()) != null) && !line.isEmpty()) {
-                        count++;
-                        cmdSender.sendMessage(channel, line);
-                    }
+        int parametersStart = nameEnd;
+        while (parametersStart < message.length() && isWhitespace(message.charAt(parametersStart)))
+            parametersStart++;
+
+        if (!isAuthorizedUser(hostName) && !floodControl.tryRequest(userMask, channel))
+            return;
+
+        final RequestContext context = new RequestContext(nickName, login, hostName, channel, this);
+        final String parameters = message.substring(parametersStart);
+
+        answer(channel, out -> command.reply(context, commandName, parameters, out));
+    }
+
+    private static boolean isCommandPrefix(final char c) {
+        return c == PREFIX.charAt(0) || c == '!';
+    }
+
+    /**
+     * Returns whether a character separates a command from its parameters,
+     * the same characters as \s in a regular expression.
+     */
+    private static boolean isWhitespace(final char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Finds the command the first word of a line stands for, ignoring case.
+     * Public commands can also be abbreviated, see CommandTrie.
+     *
+     * @param table   the commands to look in
+     * @param message the line, starting with a command prefix
+     * @param nameEnd the index after the last character of the command name
+     * @return the name of the command, or null if there is none
+     */
+    private static String resolveCommand(final CommandTable table, final String message, final int nameEnd) {
+        final String name = table.getCommands().resolve(message, 1, nameEnd);
+        if (name == null || name.length() == nameEnd - 1 || table.getPublicCommands().contains(name))
+            return name;
+        return null;
+    }
+
+    /**
+     * Answers a request on one of the request threads. Requests from the same
+     * channel are answered one after another, in the order they came in, so
+     * their replies stay in order; requests from different channels are
+     * answered at the same time. A request counts as answered once the
+     * CompletionStage it returns completes, which need not happen on a
+     * request thread; lines sent after that are dropped. Once
+     * MAX_PENDING_REQUESTS requests of a channel are waiting, further ones are
+     * dropped.
+     *
+     * @param channel the channel the request was made in
+     * @param request answers the request, sending the reply to the given sink
+     */
+    private void answer(final String channel, final Function<ReplySink, CompletionStage<Void>> request) {
+        synchronized (pendingRequests) {
+            final int pending = pendingRequests.getOrDefault(channel, 0);
+            if (pending >= MAX_PENDING_REQUESTS) {
+                System.err.println("Too many requests in " + channel + ", dropping one");
+                return;
+            }
+            pendingRequests.put(channel, pending + 1);
+
+            final CompletableFuture<Void> previous = lastRequests.getOrDefault(channel, CompletableFuture.completedFuture(null));
+            lastRequests.put(channel, previous.exceptionally(e -> null).thenComposeAsync(v -> {
+                final ChannelReply out = new ChannelReply(channel);
+                CompletionStage<Void> answer;
+                try {
+                    answer = request.apply(out);
+                } catch (RuntimeException | Error e) {
+                    final CompletableFuture<Void> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(e);
+                    answer = failed;
                 }
+                return answer.whenComplete((result, e) -> {
+                    if (e != null)
+                        e.printStackTrace();
+                    out.end();
+                    answered(channel);
+                });
+            }, requestExecutor));
+        }
+    }
+
+    private void answered(final String channel) {
+        synchronized (pendingRequests) {
+            final int pending = pendingRequests.get(channel) - 1;
+            if (pending == 0) {
+                pendingRequests.remove(channel);
+                lastRequests.remove(channel);
+            } else {
+                pendingRequests.put(channel, pending);
             }
         }
     }
 
-    private boolean ignoreIfRepeated(final String message, final String userMask) {
-        if (!isAuthorizedUser(userMask.substring(userMask.indexOf('@') + 1))) {
-            if (lastLines.containsKey(userMask)) {
-                if (message.trim().equalsIgnoreCase(lastLines.get(userMask).trim())) {
-                    long time = 0;
-                    if (lastMessage.containsKey(userMask))
-                        time = lastMessage.get(userMask);
-
-                    if (System.currentTimeMillis() - time < REPEAT_MESSAGE_LIMIT) {
-                        ignoredUsers.put(userMask, System.currentTimeMillis() + IGNORE_TIME);
-                        return true;
-                    }
-                }
+    /**
+     * Sends the lines of a reply to a channel, at most MAX_REPLY_LINES of them
+     * and none after the first empty one.
+     */
+    private final class ChannelReply implements ReplySink {
+        private final String channel;
+        private int lines;
+        private boolean ended;
+
+        private ChannelReply(final String channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public synchronized boolean send(final String line) {
+            if (ended || line.isEmpty()) {
+                ended = true;
+                return false;
             }
+
+            cmdSender.sendMessage(channel, line);
+            ended = ++lines >= MAX_REPLY_LINES;
+            return !ended;
+        }
+
+        private synchronized void end() {
+            ended = true;
         }
-        return false;
     }
 
-    protected boolean userIsIgnored(final String userMask) {
-        if (ignoredUsers.containsKey(userMask)) {
-            if (System.currentTimeMillis() > ignoredUsers.get(userMask))
-                ignoredUsers.remove(userMask); // remove it if the time is up
-            else
-                return true;
+    private boolean ignoreIfRepeated(final String message, final String userMask) {
+        return !isAuthorizedUser(userMask.substring(userMask.indexOf('@') + 1)) && floodControl.ignoreIfRepeated(userMask, message);
+    }
+
+    /**
+     * Ignores the users taking part in a raid, if a line in a channel is part
+     * of one; see RaidDetector. Authorized users are never ignored.
+     *
+     * @return true if the user who said the line is ignored from now on
+     */
+    private boolean ignoreIfRaid(final String channel, final String message, final String userMask) {
+        if (!channel.startsWith("#"))
+            return false;
+
+        final List<String> raid = raidDetector.check(channel, userMask, message);
+        if (raid == null)
+            return false;
+
+        System.out.println("Ignoring raid in " + channel + " by " + raid);
+        for (final String member : raid) {
+            if (!isAuthorizedUser(member.substring(member.indexOf('@') + 1)))
+                floodControl.ignore(member);
         }
-        return false;
+        return floodControl.isIgnored(userMask);
+    }
+
+    protected boolean userIsIgnored(final String userMask) {
+        return floodControl.isIgnored(userMask);
     }
 
     @Override
@@ -351,8 +591,15 @@ public class Botster extends PircBot {
         }
     }
 
+    /**
+     * Returns the name of the network this bot is on, as given in servers.xml.
+     */
+    public String getNetwork() {
+        return network;
+    }
+
     public String getLastLine(final String name) {
-        return lastLines.get(name);
+        return floodControl.getLastLine(name);
     }
 
     public CommandSender getCommandSender() {
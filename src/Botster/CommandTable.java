@@ -0,0 +1,78 @@
+package Botster;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The commands a Botster knows: every command by name, the names of the public
+ * and the restricted ones, and a TypoIndex of the public ones for suggestions.
+ * <p>
+ * Reloading the commands fills a new CommandTable and only then puts it in
+ * place of the old one, so a line is always looked up in a complete set of
+ * commands. Commands registered or unregistered one at a time change the
+ * table in place; all methods may be called from any thread.
+ */
+final class CommandTable {
+    private final CommandTrie commands = new CommandTrie();
+    private final Set<String> publicCommands = ConcurrentHashMap.newKeySet();
+    private final Set<String> restrictedCommands = ConcurrentHashMap.newKeySet();
+    private final TypoIndex publicNames = new TypoIndex();
+
+    /**
+     * Registers a public command, unless there already is a command with that
+     * name.
+     *
+     * @return true if the command was registered
+     */
+    boolean register(final String name, final IRCCommand command) {
+        if (!commands.putIfAbsent(name, command))
+            return false;
+        publicCommands.add(name);
+        publicNames.add(name);
+        return true;
+    }
+
+    /**
+     * Registers a restricted command, unless there already is a command with
+     * that name.
+     *
+     * @return true if the command was registered
+     */
+    boolean registerRestricted(final String name, final IRCCommand command) {
+        if (!commands.putIfAbsent(name, command))
+            return false;
+        restrictedCommands.add(name);
+        return true;
+    }
+
+    /**
+     * Unregisters a public or restricted command, if it is registered to the
+     * given IRCCommand.
+     *
+     * @return true if the command was unregistered
+     */
+    boolean unregister(final String name, final IRCCommand command) {
+        if (!commands.remove(name, command))
+            return false;
+        if (publicCommands.remove(name))
+            publicNames.remove(name);
+        restrictedCommands.remove(name);
+        return true;
+    }
+
+    CommandTrie getCommands() {
+        return commands;
+    }
+
+    Set<String> getPublicCommands() {
+        return publicCommands;
+    }
+
+    Set<String> getRestrictedCommands() {
+        return restrictedCommands;
+    }
+
+    TypoIndex getPublicNames() {
+        return publicNames;
+    }
+}
@@ -0,0 +1,181 @@
+package Botster;
+
+/**
+ * The commands of a Botster by name, ignoring case. Besides its full name, a
+ * command can be found by any abbreviation of at least MIN_PREFIX_LENGTH
+ * characters that no other command starts with, e.g. fac for factoid if
+ * there is no facts command.
+ * <p>
+ * The names are kept in a trie with one node per character. Every node
+ * counts the commands below it, so whether an abbreviation is unique is
+ * known as soon as its last character is reached. Lookups take a range of a
+ * CharSequence, so a line can be looked up without cutting the name out of
+ * it first, and do not allocate.
+ */
+final class CommandTrie {
+    public static final int MIN_PREFIX_LENGTH = 3;
+
+    private final Node root = new Node();
+
+    /**
+     * Adds a command, unless there already is one with the same name in any
+     * case.
+     *
+     * @param name    the name of the command
+     * @param command the IRCCommand that replies to it
+     * @return true if the command was added
+     */
+    public synchronized boolean putIfAbsent(final String name, final IRCCommand command) {
+        if (contains(name))
+            return false;
+
+        Node node = root;
+        node.count++;
+        for (int i = 0; i < name.length(); i++) {
+            node = node.child(Character.toLowerCase(name.charAt(i)), true);
+            node.count++;
+        }
+        node.name = name;
+        node.command = command;
+        return true;
+    }
+
+    /**
+     * Removes a command, if the name belongs to it.
+     *
+     * @param name    the name of the command, in any case
+     * @param command the IRCCommand that replies to it
+     * @return true if the command was removed
+     */
+    public synchronized boolean remove(final String name, final IRCCommand command) {
+        final Node found = find(name, 0, name.length());
+        if (found == null || found.command != command)
+            return false;
+
+        found.name = null;
+        found.command = null;
+
+        Node node = root;
+        node.count--;
+        for (int i = 0; i < name.length(); i++) {
+            final char c = Character.toLowerCase(name.charAt(i));
+            final Node child = node.child(c, false);
+            if (--child.count == 0) {
+                node.removeChild(c);
+                break;
+            }
+            node = child;
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether there is a command with the given name, in any case.
+     */
+    public synchronized boolean contains(final CharSequence name) {
+        final Node node = find(name, 0, name.length());
+        return node != null && node.command != null;
+    }
+
+    /**
+     * Returns the command with the given name, in any case.
+     *
+     * @return the command, or null if there is none by that name
+     */
+    public synchronized IRCCommand get(final CharSequence name) {
+        final Node node = find(name, 0, name.length());
+        return node == null ? null : node.command;
+    }
+
+    /**
+     * Finds the name of the command a part of a line stands for: the command
+     * with that name, or else the only one starting with it.
+     *
+     * @param text  the line
+     * @param start the index of the first character of the name
+     * @param end   the index after the last character of the name
+     * @return the name the command was added under, or null if there is no
+     * such command or more than one
+     */
+    public synchronized String resolve(final CharSequence text, final int start, final int end) {
+        Node node = find(text, start, end);
+        if (node == null)
+            return null;
+        if (node.command != null)
+            return node.name;
+        if (node.count != 1 || end - start < MIN_PREFIX_LENGTH)
+            return null;
+
+        while (node.command == null)
+            node = node.children[0];
+        return node.name;
+    }
+
+    private Node find(final CharSequence text, final int start, final int end) {
+        Node node = root;
+        for (int i = start; i < end && node != null; i++)
+            node = node.child(Character.toLowerCase(text.charAt(i)), false);
+        return node;
+    }
+
+    private static final class Node {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        /**
+         * The characters leading to the children, in lower case and sorted.
+         */
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+
+        /**
+         * The number of commands at and below this node.
+         */
+        private int count;
+        private String name;
+        private IRCCommand command;
+
+        private Node child(final char key, final boolean create) {
+            int low = 0;
+            int high = keys.length - 1;
+            while (low <= high) {
+                final int middle = (low + high) >>> 1;
+                if (keys[middle] < key)
+                    low = middle + 1;
+                else if (keys[middle] > key)
+                    high = middle - 1;
+                else
+                    return children[middle];
+            }
+            if (!create)
+                return null;
+
+            final char[] newKeys = new char[keys.length + 1];
+            final Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, low);
+            System.arraycopy(children, 0, newChildren, 0, low);
+            System.arraycopy(keys, low, newKeys, low + 1, keys.length - low);
+            System.arraycopy(children, low, newChildren, low + 1, children.length - low);
+            newKeys[low] = key;
+            newChildren[low] = new Node();
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[low];
+        }
+
+        private void removeChild(final char key) {
+            int index = 0;
+            while (keys[index] != key)
+                index++;
+
+            final char[] newKeys = new char[keys.length - 1];
+            final Node[] newChildren = new Node[children.length - 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(keys, index + 1, newKeys, index, keys.length - index - 1);
+            System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+            keys = newKeys;
+            children = newChildren;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package Botster;
+
+/**
+ * Edit distances used for fuzzy matching of API terms and command names.
+ * <p>
+ * When the shorter of the two strings is at most 64 characters long, distances
+ * are computed with the bit-parallel algorithm of Myers, extended to adjacent
+ * transpositions as described by Hyyro; one column of the distance table is
+ * then computed with a handful of operations on a long. Longer strings fall
+ * back to a dynamic programming table restricted to a diagonal band.
+ * <p>
+ * All methods take a maximum distance the caller is interested in. Once the
+ * distance is known to exceed it, the computation stops and some value
+ * greater than the maximum is returned. Scratch space is kept per thread, so
+ * none of the methods allocate once a thread has warmed up.
+ */
+public final class EditDistance {
+    private static final int WORD_SIZE = 64;
+    private static final int TABLE_SIZE = 256;
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private EditDistance() {
+    }
+
+    /**
+     * Returns the Damerau-Levenshtein distance between two strings.
+     *
+     * @param string1 the first string
+     * @param string2 the string to compare to
+     * @return the Damerau-Levenshtein distance between string1 and string2
+     */
+    public static int damLevDistance(CharSequence string1, CharSequence string2) {
+        return damLevDistance(string1, string2, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the Damerau-Levenshtein distance between two strings, where an
+     * adjacent transposition counts as one operation and no substring is
+     * edited more than once.
+     *
+     * @param string1 the first string
+     * @param string2 the string to compare to
+     * @param max     the highest distance of interest
+     * @return the Damerau-Levenshtein distance between string1 and string2, or
+     * a value greater than max if the distance exceeds max
+     */
+    public static int damLevDistance(CharSequence string1, CharSequence string2, int max) {
+        return distance(string1, string2, max, true);
+    }
+
+    /**
+     * Returns the Levenshtein distance between two strings. Unlike
+     * damLevDistance(), which counts a transposition of adjacent characters as
+     * one operation, this is a metric: it satisfies the triangle inequality, so
+     * it can be used to organize a BK-tree. Since a transposition costs two
+     * operations here, levenshtein(a, b) is never more than twice
+     * damLevDistance(a, b).
+     *
+     * @param string1 the first string
+     * @param string2 the string to compare to
+     * @return the Levenshtein distance between string1 and string2
+     */
+    public static int levenshtein(CharSequence string1, CharSequence string2) {
+        return levenshtein(string1, string2, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the Levenshtein distance between two strings.
+     *
+     * @param string1 the first string
+     * @param string2 the string to compare to
+     * @param max     the highest distance of interest
+     * @return the Levenshtein distance between string1 and string2, or a value
+     * greater than max if the distance exceeds max
+     */
+    public static int levenshtein(CharSequence string1, CharSequence string2, int max) {
+        return distance(string1, string2, max, false);
+    }
+
+    private static int distance(CharSequence string1, CharSequence string2, int max, boolean transpositions) {
+        CharSequence pattern = string1.length() <= string2.length() ? string1 : string2;
+        CharSequence text = pattern == string1 ? string2 : string1;
+
+        if (text.length() - pattern.length() > max)
+            return max + 1;
+
+        if (pattern.length() == 0)
+            return text.length();
+
+        if (pattern.length() <= WORD_SIZE)
+            return bitParallel(pattern, text, max, transpositions, SCRATCH.get());
+
+        return banded(pattern, text, max, transpositions, SCRATCH.get());
+    }
+
+    /**
+     * Computes the distance one column at a time, keeping the vertical
+     * differences between adjacent cells of the column as bit vectors. Only
+     * the cell in the last row is tracked; since it can drop by at most one per
+     * remaining column, the computation stops once it can no longer end up at
+     * or below max.
+     */
+    private static int bitParallel(CharSequence pattern, CharSequence text, int max, boolean transpositions, Scratch scratch) {
+        int m = pattern.length();
+        int n = text.length();
+        long[] peq = scratch.peq;
+
+        for (int i = 0; i < m; i++) {
+            char c = pattern.charAt(i);
+            if (c < TABLE_SIZE)
+                peq[c] |= 1L << i;
+        }
+
+        try {
+            long last = 1L << (m - 1);
+            long vp = -1L;
+            long vn = 0;
+            long previousD0 = 0;
+            long previousPm = 0;
+            int score = m;
+
+            for (int j = 0; j < n; j++) {
+                char c = text.charAt(j);
+                long pm = c < TABLE_SIZE ? peq[c] : matchMask(pattern, c);
+                long d0 = (((pm & vp) + vp) ^ vp) | pm | vn;
+
+                if (transpositions)
+                    d0 |= ((~previousD0 & pm) << 1) & previousPm;
+
+                long hp = vn | ~(d0 | vp);
+                long hn = vp & d0;
+
+                if ((hp & last) != 0)
+                    score++;
+                else if ((hn & last) != 0)
+                    score--;
+
+                if (score - (n - j - 1) > max)
+                    return max + 1;
+
+                hp = (hp << 1) | 1;
+                hn <<= 1;
+                vp = hn | ~(d0 | hp);
+                vn = hp & d0;
+                previousD0 = d0;
+                previousPm = pm;
+            }
+            return score;
+        } finally {
+            for (int i = 0; i < m; i++) {
+                char c = pattern.charAt(i);
+                if (c < TABLE_SIZE)
+                    peq[c] = 0;
+            }
+        }
+    }
+
+    private static long matchMask(CharSequence pattern, char c) {
+        long mask = 0;
+        for (int i = 0; i < pattern.length(); i++)
+            if (pattern.charAt(i) == c)
+                mask |= 1L << i;
+        return mask;
+    }
+
+    /**
+     * Computes the distance row by row, only filling in cells within max of
+     * the diagonal; any cell further away needs more than max operations.
+     * Three rows are kept, since a transposition looks two rows back.
+     */
+    private static int banded(CharSequence pattern, CharSequence text, int max, boolean transpositions, Scratch scratch) {
+        int m = pattern.length();
+        int n = text.length();
+        int band = Math.min(max, n);
+        int unreachable = band + 1;
+
+        int[] beforePrevious = scratch.row(0, n + 2);
+        int[] previous = scratch.row(1, n + 2);
+        int[] current = scratch.row(2, n + 2);
+
+        for (int j = 0; j <= Math.min(n, band + 1); j++)
+            previous[j] = Math.min(j, unreachable);
+
+        for (int i = 1; i <= m; i++) {
+            int from = Math.max(1, i - band);
+            int to = Math.min(n, i + band);
+            current[from - 1] = from == 1 ? Math.min(i, unreachable) : unreachable;
+            int rowMin = current[from - 1];
+            char c = pattern.charAt(i - 1);
+
+            for (int j = from; j <= to; j++) {
+                int diff = c == text.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + diff);
+
+                if (transpositions && i > 1 && j > 1 && c == text.charAt(j - 2) && pattern.charAt(i - 2) == text.charAt(j - 1))
+                    value = Math.min(value, beforePrevious[j - 2] + diff);
+
+                current[j] = Math.min(value, unreachable);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+
+            if (to < n)
+                current[to + 1] = unreachable;
+
+            if (rowMin > band)
+                return max + 1;
+
+            int[] swap = beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[n] > band ? max + 1 : previous[n];
+    }
+
+    /**
+     * Per-thread scratch space: the match masks of the bit-parallel algorithm,
+     * indexed by character, and the rows of the banded algorithm.
+     */
+    private static class Scratch {
+        final long[] peq = new long[TABLE_SIZE];
+        final int[][] rows = new int[3][];
+
+        int[] row(int index, int length) {
+            if (rows[index] == null || rows[index].length < length)
+                rows[index] = new int[Math.max(length, 2 * WORD_SIZE)];
+            return rows[index];
+        }
+    }
+}
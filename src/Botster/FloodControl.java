@@ -0,0 +1,225 @@
+package Botster;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps track of what users said and how many requests users and channels
+ * make, to ignore users who repeat themselves and to limit the rate of
+ * requests.
+ * <p>
+ * Users are known by login@host. A user who says the same line twice within
+ * Botster.REPEAT_MESSAGE_LIMIT milliseconds is ignored for
+ * Botster.IGNORE_TIME milliseconds. Requests are limited with a token bucket
+ * per user and per channel: a bucket holds up to a burst of requests and
+ * gains one every interval.
+ * <p>
+ * State only lasts as long as it matters. A user is forgotten USER_TTL
+ * milliseconds after their last line, unless they are still ignored, and a
+ * channel once its bucket is full again; the expiries are kept on a
+ * TimingWheel. At most MAX_USERS users and MAX_CHANNELS channels are kept;
+ * beyond that, the least recently seen ones are forgotten first. All methods
+ * may be called from any thread.
+ */
+final class FloodControl {
+    public static final int MAX_USERS = 10000;
+    public static final int MAX_CHANNELS = 1000;
+    public static final long USER_TTL = 3600000;
+    public static final int USER_BURST = 5;
+    public static final long USER_INTERVAL = 2000;
+    public static final int CHANNEL_BURST = 8;
+    public static final long CHANNEL_INTERVAL = 2000;
+    public static final long TICK = 1000;
+
+    private final LongSupplier clock;
+    private final TimingWheel<State> wheel;
+    private final Consumer<State> expiry = this::expire;
+
+    private final Map<String, User> users = new LinkedHashMap<String, User>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, User> eldest) {
+            return size() > MAX_USERS && evict(eldest.getValue());
+        }
+    };
+
+    private final Map<String, State> channels = new LinkedHashMap<String, State>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, State> eldest) {
+            return size() > MAX_CHANNELS && evict(eldest.getValue());
+        }
+    };
+
+    /**
+     * The state of a user or channel.
+     */
+    private static class State extends TimingWheel.Timer {
+        final String key;
+
+        /**
+         * When the token bucket will be full again; it holds fewer tokens the
+         * further this lies in the future.
+         */
+        long bucketFull;
+
+        private State(final String key) {
+            this.key = key;
+        }
+    }
+
+    private static final class User extends State {
+        String lastLine;
+        long lastMessage;
+        long ignoredUntil;
+
+        private User(final String key) {
+            super(key);
+        }
+    }
+
+    FloodControl() {
+        this(System::currentTimeMillis);
+    }
+
+    /**
+     * Creates a FloodControl that tells the time with the given clock.
+     *
+     * @param clock returns the current time in milliseconds
+     */
+    FloodControl(final LongSupplier clock) {
+        this.clock = clock;
+        this.wheel = new TimingWheel<>(TICK, clock.getAsLong());
+    }
+
+    /**
+     * Returns whether a user is ignored.
+     *
+     * @param user the login@host of the user
+     */
+    public synchronized boolean isIgnored(final String user) {
+        final long now = advance();
+        final User state = users.get(user);
+        return state != null && state.ignoredUntil > now;
+    }
+
+    /**
+     * Ignores a user if a line repeats their previous one, ignoring case and
+     * surrounding whitespace, within Botster.REPEAT_MESSAGE_LIMIT
+     * milliseconds.
+     *
+     * @param user the login@host of the user
+     * @param line the line the user said
+     * @return true if the user is ignored from now on
+     */
+    public synchronized boolean ignoreIfRepeated(final String user, final String line) {
+        final long now = advance();
+        final User state = users.get(user);
+        if (state == null || state.lastLine == null || !line.trim().equalsIgnoreCase(state.lastLine.trim()) || now - state.lastMessage >= Botster.REPEAT_MESSAGE_LIMIT)
+            return false;
+
+        state.ignoredUntil = now + Botster.IGNORE_TIME;
+        schedule(state);
+        return true;
+    }
+
+    /**
+     * Ignores a user for Botster.IGNORE_TIME milliseconds from now on.
+     *
+     * @param user the login@host of the user
+     */
+    public synchronized void ignore(final String user) {
+        final long now = advance();
+        final User state = users.computeIfAbsent(user, User::new);
+        state.ignoredUntil = Math.max(state.ignoredUntil, now + Botster.IGNORE_TIME);
+        schedule(state);
+    }
+
+    /**
+     * Remembers a line a user said, as their last one.
+     *
+     * @param user the login@host of the user
+     * @param line the line the user said
+     */
+    public synchronized void lineSaid(final String user, final String line) {
+        final long now = advance();
+        final User state = users.computeIfAbsent(user, User::new);
+        state.lastLine = line;
+        state.lastMessage = now;
+        schedule(state);
+    }
+
+    /**
+     * Returns the last line a user said, if they are still remembered.
+     *
+     * @param user the login@host of the user
+     */
+    public synchronized String getLastLine(final String user) {
+        advance();
+        final User state = users.get(user);
+        return state == null ? null : state.lastLine;
+    }
+
+    /**
+     * Takes a token from the buckets of a user and of a channel for a request,
+     * if both have one.
+     *
+     * @param user    the login@host of the user making the request
+     * @param channel the channel the request was made in
+     * @return false if the user or channel made too many requests lately
+     */
+    public synchronized boolean tryRequest(final String user, final String channel) {
+        final long now = advance();
+        final User userState = users.computeIfAbsent(user, User::new);
+        final State channelState = channels.computeIfAbsent(channel, State::new);
+
+        final boolean allowed = hasToken(userState, now, USER_BURST, USER_INTERVAL) && hasToken(channelState, now, CHANNEL_BURST, CHANNEL_INTERVAL);
+        if (allowed) {
+            userState.bucketFull = Math.max(userState.bucketFull, now) + USER_INTERVAL;
+            channelState.bucketFull = Math.max(channelState.bucketFull, now) + CHANNEL_INTERVAL;
+        }
+
+        schedule(userState);
+        schedule(channelState);
+        return allowed;
+    }
+
+    /**
+     * Returns the number of users and channels currently kept.
+     */
+    public synchronized int size() {
+        advance();
+        return users.size() + channels.size();
+    }
+
+    private static boolean hasToken(final State entry, final long now, final int burst, final long interval) {
+        return entry.bucketFull - now <= (burst - 1) * interval;
+    }
+
+    private long advance() {
+        final long now = clock.getAsLong();
+        wheel.advance(now, expiry);
+        return now;
+    }
+
+    private void schedule(final State entry) {
+        long deadline = entry.bucketFull;
+        if (entry instanceof User) {
+            final User user = (User) entry;
+            deadline = Math.max(deadline, Math.max(user.lastMessage + USER_TTL, user.ignoredUntil));
+        }
+        wheel.schedule(entry, deadline);
+    }
+
+    private void expire(final State entry) {
+        if (entry instanceof User)
+            users.remove(entry.key);
+        else
+            channels.remove(entry.key);
+    }
+
+    private boolean evict(final State entry) {
+        wheel.cancel(entry);
+        return true;
+    }
+}
@@ -20,32 +20,30 @@ package Botster;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
  * The IRCCommand class is a basis for building new responses. Extending classes
  * can register public or restricted commands. Only public commands will be
  * visible when the help command is issued.
+ * <p>
+ * A Botster answers requests from different channels at the same time, so a
+ * single instance may be asked for several replies at once. The request being
+ * answered is passed in a RequestContext; getNickName() and the other getters
+ * return the details of the request the calling thread is answering.
+ * <p>
+ * The Botster asks for replies through reply(), which by default sends the
+ * lines of getReply() and is done. Commands that wait for I/O can override
+ * it to send lines as they are produced, and to complete the returned
+ * CompletionStage later from another thread, so no request thread waits
+ * for them.
  */
 public abstract class IRCCommand {
     /**
-     * The nickname of the person who made the last request.
+     * The request each thread is answering.
      */
-    private String nickName;
-
-    /**
-     * The login (name) of the person who made the last request.
-     */
-    private String login;
-
-    /**
-     * The hostname of the person who made the last request.
-     */
-    private String hostName;
-
-    /**
-     * The channel in which the last request was made.
-     */
-    private String channel;
+    private static final ThreadLocal<RequestContext> request = new ThreadLocal<>();
 
     /**
      * A reference to the Botster containing the command.
@@ -62,20 +60,6 @@ public abstract class IRCCommand {
      */
     private final Set<String> restrictedCommands = new HashSet<>();
 
-    /**
-     * Sets the nickName, login and hostName for this command.
-     *
-     * @param nickName the nick name of the person who made last the request
-     * @param login    the login of the person who made last the request
-     * @param hostName the host name of the person who made last the request
-     */
-    public void setNames(final String nickName, final String login, final String hostName, final String channel) {
-        this.nickName = nickName;
-        this.login = login;
-        this.hostName = hostName;
-        this.channel = channel;
-    }
-
     /**
      * Sets the reference to the Botster this command belongs to.
      *
@@ -94,21 +78,97 @@ public abstract class IRCCommand {
     public abstract String getReply(String command, String message);
 
     /**
-     * Registers a public command for this instance.
+     * Generates a reply to a request. The getters of this IRCCommand return
+     * the details of the request while getReply(command, message) runs.
+     *
+     * @param context the request
+     * @param command the command used to get to this IRCCommand
+     * @param message the parameters, if any, that were used
+     */
+    public String getReply(final RequestContext context, final String command, final String message) {
+        final RequestContext outer = request.get();
+        request.set(context);
+        try {
+            return getReply(command, message);
+        } finally {
+            if (outer == null)
+                request.remove();
+            else
+                request.set(outer);
+        }
+    }
+
+    /**
+     * Sends a reply to a request to a ReplySink. The next request from the
+     * same channel is not answered before the returned CompletionStage
+     * completes, so replies do not get mixed up.
+     * <p>
+     * This implementation sends the lines of getReply(context, command,
+     * message) and returns a completed CompletionStage.
+     *
+     * @param context the request
+     * @param command the command used to get to this IRCCommand
+     * @param message the parameters, if any, that were used
+     * @param out     where to send the lines of the reply
+     * @return completes once all lines are sent
+     */
+    public CompletionStage<Void> reply(final RequestContext context, final String command, final String message, final ReplySink out) {
+        final String reply = getReply(context, command, message);
+        if (reply != null) {
+            for (final String line : reply.split("\\R"))
+                if (!out.send(line))
+                    break;
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Returns whether a command of this instance can be used in a channel.
+     * Commands that cannot are not suggested there. This implementation
+     * returns true.
+     *
+     * @param command the name of the command
+     * @param channel the channel, or the nick name of a user for a private
+     *                message
+     */
+    public boolean isAvailable(final String command, final String channel) {
+        return true;
+    }
+
+    /**
+     * Registers a public command for this instance. Once the instance belongs
+     * to a Botster, the command is registered with the Botster right away.
      *
      * @param command the name of the command to register
      */
     protected void addCommand(final String command) {
-        commands.add(command);
+        if (commands.add(command) && bot != null)
+            bot.registerCommand(command, this);
     }
 
     /**
-     * Registers a restricted command for this instance.
+     * Registers a restricted command for this instance. Once the instance
+     * belongs to a Botster, the command is registered with the Botster right
+     * away.
      *
      * @param command the name of the command to register
      */
     protected void addRestrictedCommand(final String command) {
-        restrictedCommands.add(command);
+        if (restrictedCommands.add(command) && bot != null)
+            bot.registerRestrictedCommand(command, this);
+    }
+
+    /**
+     * Unregisters a public or restricted command of this instance, and from
+     * the Botster it belongs to.
+     *
+     * @param command the name of the command to unregister
+     */
+    protected void removeCommand(final String command) {
+        commands.remove(command);
+        restrictedCommands.remove(command);
+        if (bot != null)
+            bot.unregisterCommand(command, this);
     }
 
     /**
@@ -139,39 +199,48 @@ public abstract class IRCCommand {
     }
 
     /**
-     * Returns the nick name of the person making the last request
+     * Returns the nick name of the person making the request
      *
-     * @return the nick name of the person making the last request
+     * @return the nick name of the person making the request
      */
     protected String getNickName() {
-        return nickName;
+        return getRequest() == null ? null : getRequest().getNickName();
     }
 
     /**
-     * Returns the login of the person making the last request
+     * Returns the login of the person making the request
      *
-     * @return the login of the person making the last request
+     * @return the login of the person making the request
      */
     protected String getLogin() {
-        return login;
+        return getRequest() == null ? null : getRequest().getLogin();
     }
 
     /**
-     * Returns the host name of the person making the last request
+     * Returns the host name of the person making the request
      *
-     * @return the host name of the person making the last request
+     * @return the host name of the person making the request
      */
     protected String getHostName() {
-        return hostName;
+        return getRequest() == null ? null : getRequest().getHostName();
     }
 
     /**
-     * Returns the channel in which the last request was made
+     * Returns the channel in which the request was made
      *
-     * @return the channel in which the last request was made
+     * @return the channel in which the request was made
      */
     protected String getChannel() {
-        return channel;
+        return getRequest() == null ? null : getRequest().getChannel();
+    }
+
+    /**
+     * Returns the request the calling thread is answering
+     *
+     * @return the request, or null outside of getReply
+     */
+    protected RequestContext getRequest() {
+        return request.get();
     }
 
     /**
@@ -0,0 +1,134 @@
+package Botster;
+
+/**
+ * The hash table behind TypoIndex and NameIndex: string keys with an optional
+ * value each, stored under a hash the caller computes, so the same key may be
+ * stored under several hashes and the same hash may occur several times.
+ * <p>
+ * The table uses open addressing with linear probing and is kept at most half
+ * full. A lookup walks the slots of one hash with find and findNext and
+ * compares the keys itself. Removals shift later entries of the same probe
+ * sequence back, so no tombstones are needed. The table is not thread-safe.
+ *
+ * @param <V> the type of the values
+ */
+public final class ProbeTable<V> {
+    private String[] keys;
+    private Object[] values;
+    private int[] hashes;
+    private int size;
+
+    /**
+     * Creates an empty table.
+     *
+     * @param capacity the initial number of slots, a power of two
+     */
+    public ProbeTable(final int capacity) {
+        keys = new String[capacity];
+        values = new Object[capacity];
+        hashes = new int[capacity];
+    }
+
+    /**
+     * Returns the first slot holding an entry with a hash.
+     *
+     * @return the slot, or -1 if there is none
+     */
+    public int find(final int hash) {
+        return scan(hash, hash & (keys.length - 1));
+    }
+
+    /**
+     * Returns the next slot after a slot returned by find or findNext that
+     * holds an entry with the same hash.
+     *
+     * @return the slot, or -1 if there is none
+     */
+    public int findNext(final int hash, final int slot) {
+        return scan(hash, (slot + 1) & (keys.length - 1));
+    }
+
+    public String key(final int slot) {
+        return keys[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V value(final int slot) {
+        return (V) values[slot];
+    }
+
+    public void setValue(final int slot, final V value) {
+        values[slot] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds an entry, without checking whether the key is already stored under
+     * the hash.
+     */
+    public void add(final int hash, final String key, final V value) {
+        if ((size + 1) * 2 > keys.length)
+            resize(keys.length * 2);
+
+        insert(hash, key, value);
+        size++;
+    }
+
+    /**
+     * Removes the entry in a slot. Slots found before no longer apply.
+     */
+    public void delete(int slot) {
+        int mask = keys.length - 1;
+
+        // move back every following entry that would no longer be found past the gap
+        for (int next = (slot + 1) & mask; keys[next] != null; next = (next + 1) & mask) {
+            int home = hashes[next] & mask;
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                keys[slot] = keys[next];
+                values[slot] = values[next];
+                hashes[slot] = hashes[next];
+                slot = next;
+            }
+        }
+
+        keys[slot] = null;
+        values[slot] = null;
+        size--;
+    }
+
+    private int scan(final int hash, int slot) {
+        int mask = keys.length - 1;
+        for (; keys[slot] != null; slot = (slot + 1) & mask)
+            if (hashes[slot] == hash)
+                return slot;
+        return -1;
+    }
+
+    private void insert(final int hash, final String key, final Object value) {
+        int mask = keys.length - 1;
+        int slot = hash & mask;
+        while (keys[slot] != null)
+            slot = (slot + 1) & mask;
+
+        keys[slot] = key;
+        values[slot] = value;
+        hashes[slot] = hash;
+    }
+
+    private void resize(final int capacity) {
+        String[] oldKeys = keys;
+        Object[] oldValues = values;
+        int[] oldHashes = hashes;
+
+        keys = new String[capacity];
+        values = new Object[capacity];
+        hashes = new int[capacity];
+
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldKeys[i] != null)
+                insert(oldHashes[i], oldKeys[i], oldValues[i]);
+    }
+}
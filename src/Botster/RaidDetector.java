@@ -0,0 +1,196 @@
+package Botster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Recognizes raids: several users saying nearly the same line in a channel
+ * within a short time, as bots flooding a channel from many hosts do.
+ * <p>
+ * Every line gets a 64 bit SimHash fingerprint of its three-character
+ * shingles, ignoring case, punctuation and spacing. Lines that differ in a
+ * few characters get fingerprints that differ in a few bits, so two lines
+ * count as nearly the same if their fingerprints differ in at most
+ * MAX_DISTANCE bits. Each channel keeps the fingerprints of its last WINDOW
+ * lines in a ring, and a new line is compared with those of the last
+ * WINDOW_TIME milliseconds; the work per line and the memory per channel are
+ * fixed, however busy the channel is. Lines shorter than MIN_LENGTH
+ * characters are left alone, since many people say "thanks" on their own.
+ */
+final class RaidDetector {
+    public static final int WINDOW = 64;
+    public static final long WINDOW_TIME = 60000;
+    public static final int MIN_LENGTH = 24;
+    public static final int MAX_DISTANCE = 12;
+    public static final int CLUSTER_SIZE = 4;
+    public static final int MAX_CHANNELS = 100;
+
+    private final LongSupplier clock;
+    private final Map<String, Ring> rings = new LinkedHashMap<String, Ring>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Ring> eldest) {
+            return size() > MAX_CHANNELS;
+        }
+    };
+
+    /**
+     * Scratch space, reused for every line.
+     */
+    private final int[] weights = new int[Long.SIZE];
+    private final String[] members = new String[WINDOW];
+
+    /**
+     * The last WINDOW lines of a channel.
+     */
+    private static final class Ring {
+        private final long[] fingerprints = new long[WINDOW];
+        private final long[] times = new long[WINDOW];
+        private final String[] users = new String[WINDOW];
+        private int next;
+    }
+
+    RaidDetector() {
+        this(System::currentTimeMillis);
+    }
+
+    /**
+     * Creates a RaidDetector that tells the time with the given clock.
+     *
+     * @param clock returns the current time in milliseconds
+     */
+    RaidDetector(final LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Adds a line to the lines of a channel, and checks whether it is part of
+     * a raid: whether at least CLUSTER_SIZE different users, including the
+     * one saying it, said nearly the same line within WINDOW_TIME
+     * milliseconds.
+     *
+     * @param channel the channel the line was said in
+     * @param user    the login@host of the user who said it
+     * @param line    the line
+     * @return the users taking part in the raid, or null if there is none
+     */
+    public synchronized List<String> check(final String channel, final String user, final CharSequence line) {
+        if (normalizedLength(line) < MIN_LENGTH)
+            return null;
+
+        final long now = clock.getAsLong();
+        final long fingerprint = fingerprint(line);
+        final Ring ring = rings.computeIfAbsent(channel, (c) -> new Ring());
+
+        int count = 0;
+        for (int i = 0; i < WINDOW; i++) {
+            final String other = ring.users[i];
+            if (other == null || now - ring.times[i] > WINDOW_TIME || other.equals(user) || Long.bitCount(fingerprint ^ ring.fingerprints[i]) > MAX_DISTANCE)
+                continue;
+            if (!contains(members, count, other))
+                members[count++] = other;
+        }
+
+        ring.fingerprints[ring.next] = fingerprint;
+        ring.times[ring.next] = now;
+        ring.users[ring.next] = user;
+        ring.next = (ring.next + 1) % WINDOW;
+
+        if (count + 1 < CLUSTER_SIZE)
+            return null;
+
+        final List<String> raid = new ArrayList<>(count + 1);
+        for (int i = 0; i < count; i++)
+            raid.add(members[i]);
+        raid.add(user);
+        return raid;
+    }
+
+    private static boolean contains(final String[] array, final int length, final String value) {
+        for (int i = 0; i < length; i++)
+            if (array[i].equals(value))
+                return true;
+        return false;
+    }
+
+    /**
+     * Returns the length of a line in lower case, with every run of other
+     * characters than letters and digits replaced by a single space, and
+     * without leading or trailing spaces.
+     */
+    private static int normalizedLength(final CharSequence line) {
+        int length = 0;
+        boolean space = false;
+        for (int i = 0; i < line.length(); i++) {
+            if (Character.isLetterOrDigit(line.charAt(i))) {
+                if (space && length > 0)
+                    length++;
+                length++;
+                space = false;
+            } else {
+                space = true;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Computes the SimHash of the three-character shingles of a normalized
+     * line: every bit is set if more shingles have it set in their hash than
+     * not.
+     */
+    private long fingerprint(final CharSequence line) {
+        Arrays.fill(weights, 0);
+
+        long shingle = 0;
+        int shingleLength = 0;
+        boolean space = false;
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (!Character.isLetterOrDigit(c)) {
+                space = true;
+                continue;
+            }
+            if (space && shingleLength > 0) {
+                shingle = (shingle << 16) | ' ';
+                shingleLength++;
+                if (shingleLength >= 3)
+                    addShingle(shingle & 0xffffffffffffL);
+            }
+            space = false;
+
+            shingle = (shingle << 16) | Character.toLowerCase(c);
+            shingleLength++;
+            if (shingleLength >= 3)
+                addShingle(shingle & 0xffffffffffffL);
+        }
+
+        long fingerprint = 0;
+        for (int bit = 0; bit < Long.SIZE; bit++)
+            if (weights[bit] > 0)
+                fingerprint |= 1L << bit;
+        return fingerprint;
+    }
+
+    private void addShingle(final long shingle) {
+        final long hash = mix(shingle);
+        for (int bit = 0; bit < Long.SIZE; bit++)
+            weights[bit] += ((hash >>> bit) & 1) == 0 ? -1 : 1;
+    }
+
+    /**
+     * The finalizer of MurmurHash3, which spreads every bit of the input over
+     * the whole hash.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
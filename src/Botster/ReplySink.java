@@ -0,0 +1,19 @@
+package Botster;
+
+/**
+ * Where an IRCCommand sends the lines of a reply, as soon as it has them. A
+ * ReplySink may be used from any thread, but only until the reply is
+ * complete.
+ */
+@FunctionalInterface
+public interface ReplySink {
+    /**
+     * Sends one line of a reply. A reply ends at its first empty line, or once
+     * the Botster has sent as many lines as it allows in one reply.
+     *
+     * @param line the line to send, without line breaks
+     * @return false if no more lines will be sent, so the command can stop
+     * producing them
+     */
+    boolean send(String line);
+}
@@ -0,0 +1,52 @@
+package Botster;
+
+/**
+ * Who made a request, where, and to which Botster. A RequestContext never
+ * changes, so it can be handed to an IRCCommand that answers requests from
+ * several channels at the same time.
+ */
+public final class RequestContext {
+    private final String nickName;
+    private final String login;
+    private final String hostName;
+    private final String channel;
+    private final Botster bot;
+
+    /**
+     * Creates the context of a request.
+     *
+     * @param nickName the nick name of the person who made the request
+     * @param login    the login of the person who made the request
+     * @param hostName the host name of the person who made the request
+     * @param channel  the channel the request was made in, or the nick name
+     *                 for a private message
+     * @param bot      the Botster that received the request
+     */
+    public RequestContext(final String nickName, final String login, final String hostName, final String channel, final Botster bot) {
+        this.nickName = nickName;
+        this.login = login;
+        this.hostName = hostName;
+        this.channel = channel;
+        this.bot = bot;
+    }
+
+    public String getNickName() {
+        return nickName;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    public String getHostName() {
+        return hostName;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public Botster getBot() {
+        return bot;
+    }
+}
@@ -0,0 +1,185 @@
+package Botster;
+
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timing wheel, for many timers that each expire at some point
+ * in time and are often pushed back before they do.
+ * <p>
+ * Time is counted in ticks. The wheel has LEVELS levels of SLOTS slots each;
+ * a slot of the lowest level holds the timers of one tick, a slot of the next
+ * level those of SLOTS ticks, and so on. Whenever the lowest level has gone
+ * round once, the next slot of the level above is emptied into the levels
+ * below it. Scheduling, cancelling and expiring a timer thus take constant
+ * time, however many timers there are.
+ * <p>
+ * Pushing a timer back only changes its deadline; when its old slot comes up
+ * it is put in the slot of its new deadline instead of expiring.
+ *
+ * @param <T> the type of the timers
+ */
+final class TimingWheel<T extends TimingWheel.Timer> {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+    private static final long MAX_TICKS = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    /**
+     * A timer of a TimingWheel, to be extended with what expires.
+     */
+    static class Timer {
+        long deadline;
+        Timer previous;
+        Timer next;
+        int level = -1;
+        int index;
+    }
+
+    private final long tick;
+    private final Timer[][] slots = new Timer[LEVELS][SLOTS];
+    private long currentTick;
+    private int size;
+
+    /**
+     * Creates an empty TimingWheel.
+     *
+     * @param tick the length of a tick in milliseconds
+     * @param now  the current time in milliseconds
+     */
+    TimingWheel(final long tick, final long now) {
+        this.tick = tick;
+        this.currentTick = now / tick;
+    }
+
+    /**
+     * Schedules a timer to expire at a deadline, or moves it there if it is
+     * already scheduled.
+     *
+     * @param timer    the timer
+     * @param deadline the time in milliseconds from which on it may expire
+     */
+    void schedule(final T timer, final long deadline) {
+        if (timer.level >= 0 && deadline >= timer.deadline) {
+            timer.deadline = deadline;
+            return;
+        }
+
+        cancel(timer);
+        timer.deadline = deadline;
+        insert(timer, currentTick + 1);
+        size++;
+    }
+
+    /**
+     * Cancels a timer, if it is scheduled.
+     */
+    void cancel(final T timer) {
+        if (timer.level < 0)
+            return;
+
+        unlink(timer);
+        size--;
+    }
+
+    /**
+     * Moves the wheel on to the current time, expiring the timers whose
+     * deadline has passed.
+     *
+     * @param now     the current time in milliseconds
+     * @param expired called with each timer that expired
+     */
+    @SuppressWarnings("unchecked")
+    void advance(final long now, final Consumer<T> expired) {
+        final long nowTick = now / tick;
+        if (size == 0) {
+            currentTick = Math.max(currentTick, nowTick);
+            return;
+        }
+
+        while (currentTick < nowTick) {
+            currentTick++;
+            for (int level = 1; level < LEVELS && (currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0; level++) {
+                Timer timer = detach(level, index(currentTick, level));
+                while (timer != null) {
+                    final Timer next = timer.next;
+                    insert(timer, currentTick);
+                    timer = next;
+                }
+            }
+
+            Timer timer = detach(0, index(currentTick, 0));
+            while (timer != null) {
+                final Timer next = timer.next;
+                if (deadlineTick(timer) > currentTick) {
+                    insert(timer, currentTick + 1);
+                } else {
+                    size--;
+                    expired.accept((T) timer);
+                }
+                timer = next;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of scheduled timers.
+     */
+    int size() {
+        return size;
+    }
+
+    private long deadlineTick(final Timer timer) {
+        return (timer.deadline + tick - 1) / tick;
+    }
+
+    private static int index(final long tick, final int level) {
+        return (int) ((tick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+    }
+
+    /**
+     * Puts a timer in the slot of its deadline, but no earlier than a given
+     * tick. Timers too far away go to the farthest slot, and are put further
+     * once that comes up.
+     */
+    private void insert(final Timer timer, final long earliestTick) {
+        final long delta = Math.min(Math.max(deadlineTick(timer), earliestTick) - currentTick, MAX_TICKS);
+        final long target = currentTick + delta;
+
+        int level = 0;
+        while (delta >= 1L << (SLOT_BITS * (level + 1)))
+            level++;
+
+        final int index = index(target, level);
+        timer.level = level;
+        timer.index = index;
+        timer.previous = null;
+        timer.next = slots[level][index];
+        if (timer.next != null)
+            timer.next.previous = timer;
+        slots[level][index] = timer;
+    }
+
+    private void unlink(final Timer timer) {
+        if (timer.previous == null)
+            slots[timer.level][timer.index] = timer.next;
+        else
+            timer.previous.next = timer.next;
+        if (timer.next != null)
+            timer.next.previous = timer.previous;
+
+        timer.previous = null;
+        timer.next = null;
+        timer.level = -1;
+    }
+
+    /**
+     * Empties a slot, returning its timers as a list linked through next.
+     */
+    private Timer detach(final int level, final int index) {
+        final Timer first = slots[level][index];
+        slots[level][index] = null;
+        for (Timer timer = first; timer != null; timer = timer.next)
+            timer.level = -1;
+        return first;
+    }
+}
@@ -0,0 +1,141 @@
+package Botster;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * An index of names for finding the names one typo away from a misspelled
+ * one, ignoring case. A typo is a missing, extra or wrong character, or two
+ * adjacent characters swapped.
+ * <p>
+ * Every name is stored under a hash of itself and of each variant with one
+ * character deleted. Two names are at most one typo apart exactly when they
+ * share such a variant, so a lookup hashes the at most length + 1 variants
+ * of the query and checks the few names stored under them, instead of
+ * comparing the query with every name. Adding or removing a name only
+ * touches its own variants.
+ * <p>
+ * The entries are kept in a single ProbeTable, in which the same hash may
+ * occur several times.
+ */
+public final class TypoIndex {
+    private static final int MIN_CAPACITY = 64;
+
+    private final ProbeTable<Void> table = new ProbeTable<>(MIN_CAPACITY);
+
+    /**
+     * Adds a name.
+     *
+     * @param name the name to add
+     */
+    public synchronized void add(final String name) {
+        for (int deleted = -1; deleted < name.length(); deleted++) {
+            if (!isRepeated(name, deleted))
+                table.add(hash(name, deleted), name, null);
+        }
+    }
+
+    /**
+     * Removes a name that was added before.
+     *
+     * @param name the name to remove, in the case it was added in
+     */
+    public synchronized void remove(final String name) {
+        for (int deleted = -1; deleted < name.length(); deleted++) {
+            if (isRepeated(name, deleted))
+                continue;
+
+            int hash = hash(name, deleted);
+            for (int slot = table.find(hash); slot != -1; slot = table.findNext(hash, slot)) {
+                if (table.key(slot).equals(name)) {
+                    table.delete(slot);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the name closest to a query, if it is at most one typo away.
+     * Names that only differ in case come first; ties are broken
+     * alphabetically. The filter is called without holding the lock of this
+     * index, so it may take other locks.
+     *
+     * @param query  the misspelled name
+     * @param filter which names may be returned
+     * @return the closest name, or null if there is none
+     */
+    public String closest(final CharSequence query, final Predicate<String> filter) {
+        String folded = fold(query);
+        String best = null;
+        int bestDistance = 2;
+
+        for (String name : candidates(query)) {
+            int distance = EditDistance.damLevDistance(folded, fold(name), 1);
+            if (distance > 1)
+                continue;
+
+            if ((best == null || distance < bestDistance || distance == bestDistance && name.compareTo(best) < 0) && filter.test(name)) {
+                best = name;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the names stored under any of the variants of a query, each
+     * once. Most are one typo away from it; a few only share a hash.
+     */
+    private synchronized List<String> candidates(final CharSequence query) {
+        List<String> candidates = new ArrayList<>();
+
+        for (int deleted = -1; deleted < query.length(); deleted++) {
+            if (isRepeated(query, deleted))
+                continue;
+
+            int hash = hash(query, deleted);
+            for (int slot = table.find(hash); slot != -1; slot = table.findNext(hash, slot))
+                if (!candidates.contains(table.key(slot)))
+                    candidates.add(table.key(slot));
+        }
+        return candidates;
+    }
+
+    /**
+     * Returns a name in lower case, one character at a time as it is hashed,
+     * so the result does not depend on the default locale and has the same
+     * length as the name.
+     */
+    private static String fold(final CharSequence name) {
+        char[] folded = new char[name.length()];
+        for (int i = 0; i < folded.length; i++)
+            folded[i] = Character.toLowerCase(name.charAt(i));
+        return new String(folded);
+    }
+
+    /**
+     * Returns whether deleting a character gives the same variant as deleting
+     * the one before it, so each variant is only stored once.
+     */
+    private static boolean isRepeated(final CharSequence name, final int deleted) {
+        return deleted > 0 && Character.toLowerCase(name.charAt(deleted)) == Character.toLowerCase(name.charAt(deleted - 1));
+    }
+
+    /**
+     * Hashes a name in lower case with one character left out.
+     *
+     * @param deleted the position of the character to leave out, or -1
+     */
+    private static int hash(final CharSequence name, final int deleted) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++)
+            if (i != deleted)
+                hash = 31 * hash + Character.toLowerCase(name.charAt(i));
+
+        // spread the bits, since only the lowest ones pick the slot
+        hash *= 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -19,18 +19,12 @@
 package commands;
 
 import botster.AbstractPlugin;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -42,16 +36,14 @@ public class APICommand extends AbstractPlugin {
     private static final int FIND_METHODS = 2;
     private static final int FIND_FIELDS = 3;
     private static final int FIND_SOURCE = 4;
-    public static final int URL_START_LENGTH = 13;
-    private final Map<String, List<String>> classes = new HashMap<>();
-    private final Map<String, List<String>> methods = new HashMap<>();
-    private final Map<String, List<String>> fields = new HashMap<>();
-    private final Map<String, List<String>> source = new HashMap<>();
-    private final Collection<String> apis = new ArrayList<>();
+    private static final String API_DIRECTORY = "apidata";
+    private static final int SHOWN_RESULTS = 3;
+    private static final int SHOWN_LINES = 6;
+    private final AtomicReference<ApiWatcher.Snapshot> snapshot = new AtomicReference<>();
 
     /**
      * Creates a new instance of APICommand and registers the "api", "class",
-     * "method", "field" and "apis" response.
+     * "method", "field", "apis", "src" and "apidoc" response.
      */
     public APICommand() {
         initialize();
@@ -61,120 +53,93 @@ public class APICommand extends AbstractPlugin {
         addCommand("field");
         addCommand("apis");
         addCommand("src");
+        addCommand("apidoc");
+        addRestrictedCommand("apiindex");
     }
 
     /**
-     * Adds a search term to the given Map.
-     *
-     * @param map  the Map to add the term to
-     * @param term the term to add
-     * @param url  the url for the given term
-     */
-    private static void addSearchTerm(Map<String, List<String>> map, String term, String url) {
-        map.computeIfAbsent(term.toLowerCase(), (str) -> new ArrayList<>()).add(url);
-    }
-
-    /**
-     * Searches the given map for the given search term
-     *
-     * @param map the Map to search in
-     * @param key the search term
-     * @return a List of Strings with the resulting URLs
-     */
-    private static Collection<String> get(Map<String, List<String>> map, String key) {
-        return map.getOrDefault(key, Collections.emptyList());
-    }
-
-    /**
-     * Returns the Damerau-Levenshtein distance between two strings.
-     *
-     * @param string1 the first string
-     * @param string2 the string to compare to
-     * @return the Damerau-Levenshtein distance between string1 and string2
-     */
-    private static int damLevDistance(CharSequence string1, CharSequence string2) {
-        int length1 = string1.length();
-        int length2 = string2.length();
-        int[][] leastOperationsTable = new int[length1 + 1][length2 + 1];
-
-        for (int i = 0; i <= length1; i++)
-            leastOperationsTable[i][0] = i;
-
-        for (int j = 0; j <= length2; j++)
-            leastOperationsTable[0][j] = j;
-
-        for (int i = 1; i <= length1; i++) {
-            for (int j = 1; j <= length2; j++) {
-                int diff;
-                if (string1.charAt(i - 1) == string2.charAt(j - 1))
-                    diff = 0;
-                else
-                    diff = 1;
-                leastOperationsTable[i][j] = Math.min(Math.min(leastOperationsTable[i - 1][j] + 1, // insertion
-                        leastOperationsTable[i][j - 1] + 1), // deletion
-                        leastOperationsTable[i - 1][j - 1] + diff); // substitution
-
-                if (i > 1 && j > 1 && string1.charAt(i - 1) == string2.charAt(j - 2) && string1.charAt(i - 2) == string2.charAt(j - 1)) {
-                    leastOperationsTable[i][j] = Math.min(leastOperationsTable[i][j], leastOperationsTable[i - 2][j - 2] + diff); // transposition
-                }
-            }
-        }
-        return leastOperationsTable[length1][length2];
-    }
-
-    /**
-     * Reads the api files
+     * Starts loading the index of every API in the background. The indexes
+     * are reloaded whenever the api files change.
      */
     private void initialize() {
-        try {
-            loadApis();
-        } catch (Exception e) {
-            System.err.println("Something went wrong while loading the APIs:");
-            e.printStackTrace();
-        }
+        new ApiWatcher(new File(API_DIRECTORY), snapshot).start();
     }
 
     /**
      * Searches for the given query in the API. Currently just responds with a
      * Google "I'm feeling lucky" string ;)
+     * <p>
+     * A query can be limited to a single API by prefixing it with the API's
+     * id, e.g. ee:Entity. If what comes before the first colon is not the id
+     * of a loaded API, the colon is part of the query, e.g. Map.Entry::getKey.
      */
     @Override
     public String getReply(String command, String message) {
         String ret;
+        ApiWatcher.Snapshot current = snapshot.get();
+        if (current == null)
+            return "The APIs are not available right now.";
+
+        if (command.equals("apiindex"))
+            return isAuthorizedUser() ? current.describe() : null;
+
+        List<ApiIndex> shards = current.shards;
+
         if (command.equals("apis"))
-            return "All loaded APIs: " + apis.stream().collect(Collectors.joining(", "));
+            return "All loaded APIs: " + shards.stream().map(shard -> shard.getApi().name + " (" + shard.getApi().id + ")").collect(Collectors.joining(", "));
+
+        List<ApiIndex> targets = shards;
+        int colon = message.indexOf(':');
+        if (colon != -1) {
+            String id = message.substring(0, colon).trim();
+            List<ApiIndex> filtered = shards.stream().filter(shard -> shard.getApi().id.equalsIgnoreCase(id)).collect(Collectors.toList());
+
+            if (!filtered.isEmpty()) {
+                targets = filtered;
+                message = message.substring(colon + 1).trim();
+            }
+        }
 
         if (message.isEmpty())
             return getNickName() + ", please provide something to search for.";
 
+        if (command.equals("src") && message.indexOf('.') != -1) {
+            String line = sourceLine(targets, message);
+            if (line != null)
+                return line;
+        }
+
         SearchResults results;
         switch (command) {
             case "class":
-                results = search(message, FIND_CLASSES);
+                results = search(targets, message, FIND_CLASSES);
                 break;
             case "method":
-                results = search(message, FIND_METHODS);
+                results = search(targets, message, FIND_METHODS);
                 break;
             case "field":
-                results = search(message, FIND_FIELDS);
+                results = search(targets, message, FIND_FIELDS);
                 break;
             case "src":
-                results = search(message, FIND_SOURCE);
+                results = search(targets, message, FIND_SOURCE);
+                break;
+            case "apidoc":
+                results = searchText(targets, message);
                 break;
             default:
-                results = search(message, FIND_ALL);
+                results = search(targets, message, FIND_ALL);
                 break;
         }
-        if (results.urls.size() == 0)
+        if (results.total == 0)
             return "No matches found.";
 
-        String[] urlStrings = new String[Math.min(3, results.urls.size())];
-        for (int i = 0; i < Math.min(3, results.urls.size()); i++)
-            urlStrings[i] = results.urls.get(i);
+        String[] urlStrings = new String[results.scores.length];
+        for (int i = 0; i < urlStrings.length; i++)
+            urlStrings[i] = shards.get(ApiIndex.order(results.scores[i])).url(ApiIndex.entry(results.scores[i]));
 
         ret = Arrays.stream(urlStrings).collect(Collectors.joining(" | "));
-        if (results.urls.size() > 3)
-            ret += " (" + results.urls.size() + " total)";
+        if (results.total > urlStrings.length)
+            ret += " (" + results.total + " total)";
 
         if (results.type == SearchResults.BEST_MATCH) {
             if (urlStrings.length > 1)
@@ -187,224 +152,271 @@ public class APICommand extends AbstractPlugin {
     }
 
     /**
-     * Loads the API files specified in apidata/api.xml
+     * Resolves a member of a class, e.g. String.valueOf, to the line of its
+     * source file it is declared on, for APIs whose source files are
+     * available. The class has to match exactly; for a member of a nested
+     * class such as Map.Entry.getKey, the file of the outer class is used.
+     *
+     * @param targets the APIs to search in
+     * @param query   the class, followed by a dot and the member
+     * @return a reply with the url, the line number and the declaration, or
+     * null if query does not start with a class with sources
      */
-    private void loadApis() throws Exception {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        Document document = builder.parse("apidata/api.xml");
-
-        Node root = document.getFirstChild();
-        NodeList children = root.getChildNodes();
-
-        for (int i = 0; i < children.getLength(); i++) {
-            Node child = children.item(i);
-            if (child.getNodeName().equals("api")) {
-
-                NamedNodeMap attributes = child.getAttributes();
-                String name = attributes.getNamedItem("name").getNodeValue();
-                String baseurl = attributes.getNamedItem("baseurl").getNodeValue();
-                String urlprefix = attributes.getNamedItem("urlprefix").getNodeValue();
-
-                apis.add(name);
-
-                NodeList files = child.getChildNodes();
-
-                for (int j = 0; j < files.getLength(); j++) {
-                    Node file = files.item(j);
-
-                    if (!file.getNodeName().equals("file"))
-                        continue;
-
-                    String fileName = file.getAttributes().getNamedItem("name").getNodeValue();
-
-                    parse(fileName, baseurl, urlprefix);
-                }
-            } else if (child.getNodeName().equals("src")) {
-                NamedNodeMap attributes = child.getAttributes();
-                String name = attributes.getNamedItem("name").getNodeValue();
-                String baseurl = attributes.getNamedItem("baseurl").getNodeValue();
-                String urlsuffix = attributes.getNamedItem("urlsuffix").getNodeValue();
-
-                apis.add(name);
-
-                NodeList files = child.getChildNodes();
-
-                for (int j = 0; j < files.getLength(); j++) {
-                    Node file = files.item(j);
-
-                    if (!file.getNodeName().equals("file"))
-                        continue;
-
-                    String fileName = file.getAttributes().getNamedItem("name").getNodeValue();
-
-                    parseSrc(fileName, baseurl, urlsuffix);
-                }
+    private String sourceLine(List<ApiIndex> targets, String query) {
+        String path = query.replace(" ", "");
+        String member = path.substring(path.lastIndexOf('.') + 1);
+
+        for (ApiIndex index : targets) {
+            int keyIndex = -1;
+            for (int dot = path.lastIndexOf('.'); index.hasSources() && keyIndex == -1 && dot > 0; dot = path.lastIndexOf('.', dot - 1))
+                keyIndex = index.find(ApiIndex.SOURCE, path.substring(0, dot).toLowerCase());
+            if (keyIndex == -1)
+                continue;
+
+            RankedResults classes = new RankedResults(1);
+            index.addEntries(ApiIndex.SOURCE, keyIndex, 0, classes);
+            int entry = ApiIndex.entry(classes.scores()[0]);
+
+            try {
+                SourceLines.Source source = index.source(entry);
+                if (source == null)
+                    continue;
+
+                List<Integer> lines = source.declarations(member);
+                if (lines.isEmpty())
+                    return "No declaration of " + member + " found in " + index.url(entry);
+
+                String ret = index.url(entry) + " line " + lines.get(0) + ": " + source.excerpt(lines.get(0));
+                if (lines.size() > 1)
+                    ret += " (also on line " + lines.subList(1, Math.min(lines.size(), SHOWN_LINES)).stream().map(String::valueOf).collect(Collectors.joining(", "))
+                            + (lines.size() > SHOWN_LINES ? " and " + (lines.size() - SHOWN_LINES) + " more)" : ")");
+                return ret;
+            } catch (Exception e) {
+                System.err.println("Could not read the source of " + index.url(entry) + ": " + e);
             }
         }
+        return null;
     }
 
-    private void parseSrc(String file, String baseurl, String urlsuffix) throws Exception {
-        try (final BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(new File("apidata", file)), "ISO-8859-1"))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                int packEnd = line.lastIndexOf('/');
-                String pack = line.substring(0, packEnd).replace('/', '.');
-                String className = line.substring(packEnd + 1);
-
-                // remove .java
-                className = className.substring(0, className.length() - 5);
+    /**
+     * Searches all tables of the given APIs for the given term, or only one if
+     * limit != FIND_ALL. A term ending in * finds everything starting with it.
+     * A method signature like valueOf(char[]) or (String,int)->boolean finds
+     * the methods with those parameter and return types. Otherwise, if no
+     * 100% match is found, a term like CHM is tried as a camel hump
+     * abbreviation and after that the best match is found.
+     *
+     * @param targets the APIs to search in
+     * @param term    the term to search for
+     * @param limit   the type of search to limit to
+     * @return a SearchResults with the resulting matches
+     */
+    SearchResults search(List<ApiIndex> targets, String term, int limit) {
+        String query = term.replace(" ", "");
+        String key = query.toLowerCase();
+
+        if ((limit == FIND_ALL || limit == FIND_METHODS) && Signature.isQuery(query)) {
+            Signature signature = Signature.parse(query);
+            RankedResults results = combine(fanOut(targets, index -> {
+                RankedResults matches = new RankedResults(SHOWN_RESULTS);
+                index.addSignatureMatches(signature, matches);
+                return matches;
+            }));
+            return new SearchResults(SearchResults.EXACT_MATCH, results.scores(), results.total());
+        }
 
-                String fullUrl = baseurl + line + urlsuffix;
+        if (key.endsWith("*")) {
+            String prefix = key.substring(0, key.length() - 1);
+            RankedResults results = combine(fanOut(targets, index -> {
+                RankedResults matches = new RankedResults(SHOWN_RESULTS);
+                for (int table : tables(limit))
+                    index.addPrefixMatches(table, prefix, matches);
+                return matches;
+            }));
+            return new SearchResults(SearchResults.PARTIAL_MATCH, results.scores(), results.total());
+        }
 
-                addSearchTerm(source, className, fullUrl);
-                addSearchTerm(source, pack + "." + className, fullUrl);
+        RankedResults results = combine(fanOut(targets, index -> {
+            RankedResults matches = new RankedResults(SHOWN_RESULTS);
+            for (int table : tables(limit)) {
+                int keyIndex = index.find(table, key);
+                if (keyIndex != -1)
+                    index.addEntries(table, keyIndex, 0, matches);
             }
+            return matches;
+        }));
+
+        if (results.isEmpty() && CamelHumps.isAbbreviation(query)) {
+            results = combine(fanOut(targets, index -> {
+                RankedResults matches = new RankedResults(SHOWN_RESULTS);
+                for (int table : tables(limit))
+                    index.addAbbreviationMatches(table, query, matches);
+                return matches;
+            }));
+
+            if (!results.isEmpty())
+                return new SearchResults(SearchResults.PARTIAL_MATCH, results.scores(), results.total());
         }
+
+        if (results.isEmpty())
+            return bestMatch(targets, key, limit);
+
+        return new SearchResults(SearchResults.EXACT_MATCH, results.scores(), results.total());
     }
 
     /**
-     * Parses a given text file and adds all of the classes, methods and fields
-     * to the relevant Maps.
+     * Searches the javadoc summaries of the given APIs for some words, e.g.
+     * "thread safe map".
      *
-     * @param file the name of the file to parse
+     * @param targets the APIs to search in
+     * @param text    the words to search for
+     * @return a SearchResults with the best ranked matches
      */
-    private void parse(String file, String baseurl, String urlprefix) throws Exception {
-        try (final BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(new File("apidata", file)), "ISO-8859-1"))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                int foundIndex = line.indexOf("<dt>");
-                while (foundIndex != -1) {
-                    handleEntry(line.substring(foundIndex), baseurl, urlprefix);
-                    foundIndex = line.indexOf("<dt>", foundIndex + 1);
-                }
-            }
-        }
+    SearchResults searchText(List<ApiIndex> targets, String text) {
+        List<String> words = Words.of(text);
+        RankedResults results = combine(fanOut(targets, index -> {
+            RankedResults matches = new RankedResults(SHOWN_RESULTS);
+            index.addTextMatches(words, matches);
+            return matches;
+        }));
+        return new SearchResults(SearchResults.BEST_MATCH, results.scores(), results.total());
     }
 
     /**
-     * Handles a single entry from the text files that we're parsing
+     * Finds the best match for a search term
      *
-     * @param entry the entry to handle
+     * @param targets the APIs to search in
+     * @param term    the term to search for
+     * @param limit   the type of search to limit to
+     * @return a SearchResults the most likely matches
      */
-    private void handleEntry(String entry, String baseurl, CharSequence urlprefix) {
-        int urlStart = URL_START_LENGTH + urlprefix.length();
-        int endIndex = entry.indexOf('\"', urlStart);
-        String url = entry.substring(urlStart, endIndex);
-        int slashIndex = url.lastIndexOf("/");
-
-        String pack = url.substring(0, slashIndex);
-        pack = pack.replace('/', '.');
-        String name = url.substring(slashIndex + 1);
-
-        String fullUrl = baseurl + url;
-        fullUrl = fullUrl.replace("(", "%28");
-        fullUrl = fullUrl.replace(")", "%29");
-        fullUrl = fullUrl.replace(" ", "%20");
-
-        int hashPos = name.indexOf('#');
-
-        if (hashPos == -1) {
-            String className = name.substring(0, name.length() - 5);
-            addSearchTerm(classes, className, fullUrl);
-            addSearchTerm(classes, pack + "." + className, fullUrl);
-        } else {
-            String className = name.substring(0, hashPos - 5);
-            String member = name.substring(hashPos + 1);
-
-            if (member.endsWith("-")) {
-                int parenPos = member.indexOf('-');
-
-                String methodName = member.substring(0, parenPos);
-
-                if (methodName.equals(className))
-                    methodName = "<init>";
-
-                if (!methodName.equals("<init>"))
-                    addSearchTerm(methods, methodName, fullUrl);
-
-                addSearchTerm(methods, className + "." + methodName, fullUrl);
-                addSearchTerm(methods, pack + "." + className + "." + methodName, fullUrl);
-            } else {
-                addSearchTerm(fields, member, fullUrl);
-                addSearchTerm(fields, className + "." + member, fullUrl);
-                addSearchTerm(fields, pack + "." + className + "." + member, fullUrl);
-            }
-        }
+    private SearchResults bestMatch(List<ApiIndex> targets, String term, int limit) {
+        List<FuzzyMatch> matches = fanOut(targets, index -> bestMatch(index, term, limit));
+        int bestDist = matches.stream().mapToInt(match -> match.distance).min().orElse(Integer.MAX_VALUE);
+
+        RankedResults results = new RankedResults(SHOWN_RESULTS);
+        for (FuzzyMatch match : matches)
+            if (match.distance == bestDist)
+                results.addAll(match.results);
+
+        return new SearchResults(SearchResults.BEST_MATCH, results.scores(), results.total());
     }
 
     /**
-     * Searches all maps for the given term, or only one if limit != FIND_ALL.
-     * Will find the best match if no 100% match is found.
+     * Finds the best match for a search term in a single API
      *
+     * @param index the API to search in
      * @param term  the term to search for
      * @param limit the type of search to limit to
-     * @return a SearchResults with the resulting matches
+     * @return the distance of the best match and the matching entries
      */
-    SearchResults search(String term, int limit) {
-        term = term.toLowerCase().replace(" ", "");
+    private static FuzzyMatch bestMatch(ApiIndex index, String term, int limit) {
+        Map<Integer, List<Integer>> matches = new LinkedHashMap<>();
+        int bestDist = Integer.MAX_VALUE;
 
-        List<String> results = new ArrayList<>();
+        for (int table : tables(limit)) {
+            List<Integer> keys = new ArrayList<>();
+            int distance = index.nearest(table, term, bestDist, keys);
 
-        if (limit == FIND_ALL || limit == FIND_CLASSES)
-            results.addAll(get(classes, term));
-        if (limit == FIND_ALL || limit == FIND_METHODS)
-            results.addAll(get(methods, term));
-        if (limit == FIND_ALL || limit == FIND_FIELDS)
-            results.addAll(get(fields, term));
-        if (limit == FIND_SOURCE)
-            results.addAll(get(source, term));
+            if (distance < bestDist) {
+                bestDist = distance;
+                matches.clear();
+            }
+            if (!keys.isEmpty())
+                matches.put(table, keys);
+        }
 
-        if (results.isEmpty())
-            return bestMatch(term, limit);
+        RankedResults results = new RankedResults(SHOWN_RESULTS);
+        for (Map.Entry<Integer, List<Integer>> match : matches.entrySet())
+            for (int keyIndex : match.getValue())
+                index.addEntries(match.getKey(), keyIndex, bestDist, results);
 
-        return new SearchResults(SearchResults.EXACT_MATCH, Collections.unmodifiableList(results));
+        return new FuzzyMatch(bestDist, results);
     }
 
     /**
-     * Finds the best match for a search term
+     * Runs a search on each of the given APIs. If there is more than one,
+     * they are searched in parallel on the common fork-join pool.
      *
-     * @param term  the term to search for
-     * @param limit the type of search to limit to
-     * @return a SearchResults the most likely matches
+     * @param targets the APIs to search in
+     * @param search  the search to run on each API
+     * @return the results of each API, in the order of targets
      */
-    private SearchResults bestMatch(String term, int limit) {
-        Collection<Map.Entry<String, List<String>>> lookIn = new ArrayList<>();
-
-        if (limit == FIND_ALL || limit == FIND_CLASSES)
-            lookIn.addAll(classes.entrySet());
-        if (limit == FIND_ALL || limit == FIND_METHODS)
-            lookIn.addAll(methods.entrySet());
-        if (limit == FIND_ALL || limit == FIND_FIELDS)
-            lookIn.addAll(fields.entrySet());
-        if (limit == FIND_SOURCE)
-            lookIn.addAll(source.entrySet());
-
-        List<String> results = new ArrayList<>();
-        int bestDist = Integer.MAX_VALUE;
+    private static <T> List<T> fanOut(List<ApiIndex> targets, Function<ApiIndex, T> search) {
+        if (targets.size() == 1)
+            return Collections.singletonList(search.apply(targets.get(0)));
+
+        List<ForkJoinTask<T>> tasks = new ArrayList<>(targets.size());
+        for (ApiIndex index : targets)
+            tasks.add(ForkJoinPool.commonPool().submit(() -> search.apply(index)));
+
+        List<T> results = new ArrayList<>(tasks.size());
+        for (ForkJoinTask<T> task : tasks)
+            results.add(task.join());
+        return results;
+    }
 
-        for (Map.Entry<String, List<String>> entry : lookIn) {
-            int distance = damLevDistance(term, entry.getKey());
+    private static RankedResults combine(List<RankedResults> shardResults) {
+        RankedResults results = new RankedResults(SHOWN_RESULTS);
+        for (RankedResults shardResult : shardResults)
+            results.addAll(shardResult);
+        return results;
+    }
 
-            if (distance < bestDist) {
-                bestDist = distance;
-                results.clear();
-                results.addAll(entry.getValue());
-            } else if (distance == bestDist)
-                results.addAll(entry.getValue());
+    /**
+     * Returns the index tables to look in for the given type of search
+     *
+     * @param limit the type of search to limit to
+     * @return the ApiIndex tables to search
+     */
+    private static int[] tables(int limit) {
+        switch (limit) {
+            case FIND_CLASSES:
+                return new int[]{ApiIndex.CLASSES};
+            case FIND_METHODS:
+                return new int[]{ApiIndex.METHODS};
+            case FIND_FIELDS:
+                return new int[]{ApiIndex.FIELDS};
+            case FIND_SOURCE:
+                return new int[]{ApiIndex.SOURCE};
+            default:
+                return new int[]{ApiIndex.CLASSES, ApiIndex.METHODS, ApiIndex.FIELDS};
         }
-
-        return new SearchResults(SearchResults.BEST_MATCH, Collections.unmodifiableList(results));
     }
 
     public static class SearchResults {
-        public static final int EXACT_MATCH = 0, BEST_MATCH = 1;
+        public static final int EXACT_MATCH = 0, BEST_MATCH = 1, PARTIAL_MATCH = 2;
         public final int type;
-        public final List<String> urls;
 
-        public SearchResults(int type, List<String> urls) {
+        /**
+         * The scores of the best few matching entries, best first. A score
+         * identifies both the API and the entry; their urls are only built
+         * when a reply is written.
+         */
+        public final long[] scores;
+
+        /**
+         * The number of matching entries, including those not in scores.
+         */
+        public final int total;
+
+        public SearchResults(int type, long[] scores, int total) {
             this.type = type;
-            this.urls = urls;
+            this.scores = scores;
+            this.total = total;
+        }
+    }
+
+    /**
+     * The best matches for a search term in a single API.
+     */
+    private static class FuzzyMatch {
+        final int distance;
+        final RankedResults results;
+
+        FuzzyMatch(int distance, RankedResults results) {
+            this.distance = distance;
+            this.results = results;
         }
     }
-}
\ No newline at end of file
+}
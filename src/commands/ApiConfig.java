@@ -0,0 +1,228 @@
+package commands;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The APIs described by apidata/api.xml, together with a checksum per API
+ * over its description and all of the files it refers to.
+ */
+class ApiConfig {
+    static final String API_XML = "api.xml";
+
+    private final File directory;
+    private final List<Api> apis;
+
+    private ApiConfig(File directory, List<Api> apis) {
+        this.directory = directory;
+        this.apis = Collections.unmodifiableList(apis);
+    }
+
+    /**
+     * Reads api.xml from the given directory.
+     *
+     * @param directory the apidata directory
+     * @return the parsed ApiConfig
+     */
+    static ApiConfig read(File directory) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        DocumentBuilder builder = factory.newDocumentBuilder();
+        Document document = builder.parse(new File(directory, API_XML));
+
+        Node root = document.getFirstChild();
+        NodeList children = root.getChildNodes();
+        List<Api> apis = new ArrayList<>();
+
+        for (int i = 0; i < children.getLength(); i++) {
+            Node child = children.item(i);
+            int type;
+
+            switch (child.getNodeName()) {
+                case "api":
+                    type = Api.JAVADOC;
+                    break;
+                case "src":
+                    type = Api.SOURCE;
+                    break;
+                case "classes":
+                    type = Api.CLASSES;
+                    break;
+                default:
+                    continue;
+            }
+
+            NamedNodeMap attributes = child.getAttributes();
+            String name = attributes.getNamedItem("name").getNodeValue();
+            Node id = attributes.getNamedItem("id");
+            String baseurl = attributes.getNamedItem("baseurl").getNodeValue();
+            Node affix = attributes.getNamedItem(type == Api.SOURCE ? "urlsuffix" : "urlprefix");
+            Node runtime = attributes.getNamedItem("jrt");
+            Node sources = attributes.getNamedItem("sources");
+
+            List<String> files = new ArrayList<>();
+            NodeList fileNodes = child.getChildNodes();
+
+            for (int j = 0; j < fileNodes.getLength(); j++) {
+                Node file = fileNodes.item(j);
+
+                if (file.getNodeName().equals("file"))
+                    files.add(file.getAttributes().getNamedItem("name").getNodeValue());
+            }
+
+            apis.add(new Api(id == null ? defaultId(name) : id.getNodeValue(), name, type, baseurl, affix == null ? "" : affix.getNodeValue(),
+                    runtime != null && Boolean.parseBoolean(runtime.getNodeValue()), sources == null ? null : sources.getNodeValue(), files));
+        }
+
+        return new ApiConfig(directory, apis);
+    }
+
+    /**
+     * Derives an id from an API's name, for APIs without an id attribute.
+     */
+    private static String defaultId(String name) {
+        return name.toLowerCase().replaceAll("[^a-z0-9]", "");
+    }
+
+    File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the src.zip or source directory of an API, which is relative to
+     * the apidata directory unless it is absolute.
+     *
+     * @param api the API
+     * @return the sources of api, or null if it has none
+     */
+    File getSources(Api api) {
+        if (api.sources == null)
+            return null;
+
+        File sources = new File(api.sources);
+        return sources.isAbsolute() ? sources : new File(directory, api.sources);
+    }
+
+    List<Api> getApis() {
+        return apis;
+    }
+
+    /**
+     * Calculates a CRC32 checksum over the description of an API and every
+     * file it refers to, so a changed, added or removed file results in a
+     * different checksum. Other APIs do not affect it. An API that includes
+     * the runtime image also depends on the version of the running JDK, one
+     * with sources on the size and modification time of its src.zip or
+     * directory, which can be too large to read on every load.
+     *
+     * @param api the API to calculate the checksum for
+     * @return the checksum of the API's sources
+     */
+    long checksum(Api api) throws Exception {
+        CRC32 crc = new CRC32();
+        for (String attribute : new String[]{api.id, api.name, api.baseurl, api.affix, String.valueOf(api.type), String.valueOf(api.runtime)})
+            crc.update(attribute.getBytes(StandardCharsets.UTF_8));
+
+        if (api.runtime)
+            crc.update((System.getProperty("java.home") + System.getProperty("java.runtime.version")).getBytes(StandardCharsets.UTF_8));
+
+        File sources = getSources(api);
+        if (sources != null)
+            crc.update((sources.getPath() + sources.length() + sources.lastModified()).getBytes(StandardCharsets.UTF_8));
+
+        for (String file : api.files)
+            update(crc, new File(directory, file));
+
+        return crc.getValue();
+    }
+
+    private static void update(CRC32 crc, File file) throws Exception {
+        crc.update(file.getName().getBytes(StandardCharsets.UTF_8));
+
+        if (!file.isFile()) {
+            crc.update(0);
+            return;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            crc.update(buffer);
+        }
+    }
+
+    /**
+     * A single &lt;api&gt;, &lt;src&gt; or &lt;classes&gt; entry from api.xml.
+     */
+    static class Api {
+        /**
+         * Javadoc index pages.
+         */
+        static final int JAVADOC = 0;
+
+        /**
+         * A listing of source files.
+         */
+        static final int SOURCE = 1;
+
+        /**
+         * Class files, read from jars and optionally the runtime image of the
+         * running JDK.
+         */
+        static final int CLASSES = 2;
+
+        /**
+         * The short name used to search only this API, e.g. ee in -api ee:Entity.
+         */
+        final String id;
+        final String name;
+        final int type;
+
+        /**
+         * The url that entries are relative to. For class files, {module} is
+         * replaced with the module of the entry.
+         */
+        final String baseurl;
+
+        /**
+         * The urlprefix of a javadoc API, or the urlsuffix of a source listing.
+         */
+        final String affix;
+
+        /**
+         * Whether the classes of the running JDK are included, read from its
+         * jrt:/ file system.
+         */
+        final boolean runtime;
+
+        /**
+         * The src.zip or directory of a source listing's files, or null.
+         * Without files, the listing is taken from it as well.
+         */
+        final String sources;
+        final List<String> files;
+
+        Api(String id, String name, int type, String baseurl, String affix, boolean runtime, String sources, List<String> files) {
+            this.id = id;
+            this.name = name;
+            this.type = type;
+            this.baseurl = baseurl;
+            this.affix = affix;
+            this.runtime = runtime;
+            this.sources = sources;
+            this.files = Collections.unmodifiableList(files);
+        }
+    }
+}
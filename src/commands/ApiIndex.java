@@ -0,0 +1,1022 @@
+package commands;
+
+import botster.EditDistance;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A read-only index of the search terms of one API, served straight from a
+ * memory-mapped snapshot file. Every API in api.xml is a separate shard with
+ * its own snapshot, so one API can be searched on its own and all of them can
+ * be searched in parallel.
+ * <p>
+ * The snapshot holds a table of UTF-8 strings and a columnar table of
+ * entries, one per class, method, field or source file, that store the string
+ * ids of the entry's module, package, class and member. These are followed by
+ * one table per search type, each consisting of the sorted key string ids,
+ * the start of each key's postings, the entry ids of all postings, a BK-tree
+ * over the keys for fuzzy lookups and the camel hump initials of the entries'
+ * names, laid out like the keys. Two more tables of keys map parameter
+ * lists and return types to the methods that have them, and a last one maps
+ * the words of the entries' javadoc summaries to the entries, followed by the
+ * length of each entry's summary and the positions of each word in it.
+ * <p>
+ * Entries do not store their url; it is put together from the api's baseurl
+ * and the entry's names when a result is actually shown.
+ * <p>
+ * Snapshots are built by ApiIndexBuilder and only rebuilt when the checksum of
+ * the API sources changes.
+ */
+class ApiIndex {
+    static final int MAGIC = 0x42415049; // "BAPI"
+    static final int VERSION = 8;
+
+    static final int CLASSES = 0;
+    static final int METHODS = 1;
+    static final int FIELDS = 2;
+    static final int SOURCE = 3;
+    static final int TABLE_COUNT = 4;
+
+    /**
+     * Method entries by their normalized parameter list and by their
+     * normalized return type; see Signature.
+     */
+    static final int PARAMETER_TYPES = 4;
+    static final int RETURN_TYPES = 5;
+
+    /**
+     * Entries by the words of their summary and name; see Words.
+     */
+    static final int DOC_TERMS = 6;
+    static final int KEY_TABLE_COUNT = 7;
+
+    /**
+     * The BM25 parameters: how quickly repeated words stop adding to the
+     * score, and how much longer documents are penalized.
+     */
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    /**
+     * The scores of a full-text search, kept per thread so searching does not
+     * allocate an array the size of the index every time.
+     */
+    private static final ThreadLocal<TextScores> TEXT_SCORES = ThreadLocal.withInitial(TextScores::new);
+
+    private static final byte[] JAVA_LANG = "java.lang".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] JAVA_UTIL = "java.util".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] JAVA = "java.".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] JAVAX = "javax.".getBytes(StandardCharsets.UTF_8);
+
+    private final ByteBuffer buffer;
+    private final long checksum;
+    private final ApiConfig.Api api;
+    private final int order;
+    private final SourceLines sources;
+
+    private final int stringOffsets;
+    private final int stringData;
+
+    private final int entryCount;
+    private final int entryModules;
+    private final int entryPackages;
+    private final int entryClasses;
+    private final int entryMembers;
+
+    private final int[] keyCounts = new int[KEY_TABLE_COUNT];
+    private final int[] keyIds = new int[KEY_TABLE_COUNT];
+    private final int[] postingStarts = new int[KEY_TABLE_COUNT];
+    private final int[] postings = new int[KEY_TABLE_COUNT];
+    private final int[] treeRoots = new int[TABLE_COUNT];
+    private final int[] parentDistances = new int[TABLE_COUNT];
+    private final int[] firstChildren = new int[TABLE_COUNT];
+    private final int[] nextSiblings = new int[TABLE_COUNT];
+    private final int[] humpCounts = new int[TABLE_COUNT];
+    private final int[] humpIds = new int[TABLE_COUNT];
+    private final int[] humpPostingStarts = new int[TABLE_COUNT];
+    private final int[] humpPostings = new int[TABLE_COUNT];
+
+    private final int documentCount;
+    private final double averageLength;
+    private final int documentLengths;
+    private final int positionStarts;
+    private final int positions;
+
+    private ApiIndex(ByteBuffer buffer, int order, SourceLines sources) {
+        this.buffer = buffer;
+        this.order = order;
+        this.sources = sources;
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+            throw new IllegalStateException("Unknown API snapshot format");
+
+        checksum = buffer.getLong(8);
+
+        int pos = 16;
+        int apiStart = pos;
+        pos += 20;
+
+        int stringCount = buffer.getInt(pos);
+        pos += 4;
+        stringOffsets = pos;
+        pos += (stringCount + 1) * 4;
+        stringData = pos;
+        pos += buffer.getInt(stringOffsets + stringCount * 4);
+
+        entryCount = buffer.getInt(pos);
+        pos += 4;
+        entryModules = pos;
+        pos += entryCount * 4;
+        entryPackages = pos;
+        pos += entryCount * 4;
+        entryClasses = pos;
+        pos += entryCount * 4;
+        entryMembers = pos;
+        pos += entryCount * 4;
+
+        for (int table = 0; table < KEY_TABLE_COUNT; table++) {
+            keyCounts[table] = buffer.getInt(pos);
+            pos += 4;
+            keyIds[table] = pos;
+            pos += keyCounts[table] * 4;
+            postingStarts[table] = pos;
+            int postingCount = buffer.getInt(pos + keyCounts[table] * 4);
+            pos += (keyCounts[table] + 1) * 4;
+            postings[table] = pos;
+            pos += postingCount * 4;
+
+            // the signature tables come last and only consist of their keys
+            if (table >= TABLE_COUNT)
+                continue;
+
+            treeRoots[table] = buffer.getInt(pos);
+            pos += 4;
+            parentDistances[table] = pos;
+            pos += keyCounts[table] * 4;
+            firstChildren[table] = pos;
+            pos += keyCounts[table] * 4;
+            nextSiblings[table] = pos;
+            pos += keyCounts[table] * 4;
+            humpCounts[table] = buffer.getInt(pos);
+            pos += 4;
+            humpIds[table] = pos;
+            pos += humpCounts[table] * 4;
+            humpPostingStarts[table] = pos;
+            int humpPostingCount = buffer.getInt(pos + humpCounts[table] * 4);
+            pos += (humpCounts[table] + 1) * 4;
+            humpPostings[table] = pos;
+            pos += humpPostingCount * 4;
+        }
+
+        documentCount = buffer.getInt(pos);
+        averageLength = documentCount == 0 ? 0 : buffer.getLong(pos + 4) / (double) documentCount;
+        pos += 12;
+        documentLengths = pos;
+        pos += entryCount * 4;
+        positionStarts = pos;
+        pos += (buffer.getInt(postingStarts[DOC_TERMS] + keyCounts[DOC_TERMS] * 4) + 1) * 4;
+        positions = pos;
+
+        api = new ApiConfig.Api(string(buffer.getInt(apiStart)), string(buffer.getInt(apiStart + 4)), buffer.getInt(apiStart + 16),
+                string(buffer.getInt(apiStart + 8)), string(buffer.getInt(apiStart + 12)), false, null, Collections.emptyList());
+    }
+
+    /**
+     * Opens the snapshots of all APIs in the given apidata directory. An API
+     * whose snapshot cannot be built or opened is reported and left out, so
+     * the others can still be searched.
+     *
+     * @param directory the apidata directory
+     * @return an ApiIndex per API that could be opened, in the order of
+     * api.xml; the order of each is its position in this list
+     */
+    static List<ApiIndex> openAll(File directory) throws Exception {
+        ApiConfig config = ApiConfig.read(directory);
+        List<ApiIndex> shards = new ArrayList<>();
+
+        for (ApiConfig.Api api : config.getApis()) {
+            try {
+                shards.add(open(config, api, shards.size()));
+            } catch (Exception e) {
+                System.err.println("Could not load the API " + api.id + ":");
+                e.printStackTrace();
+            }
+        }
+
+        return Collections.unmodifiableList(shards);
+    }
+
+    /**
+     * Opens the snapshot of an API, rebuilding it first if it is missing,
+     * unreadable or was built from different sources.
+     * <p>
+     * The checksum of the sources is part of the name of a snapshot, so a
+     * rebuilt snapshot never replaces a file that is still mapped, e.g. by the
+     * shards in use until a reload is done; Windows does not allow that.
+     * Snapshots of older sources are deleted once nothing maps them anymore.
+     *
+     * @param config the APIs described by api.xml
+     * @param api    the API to open
+     * @param order  the position of the API in the list of loaded APIs
+     * @return the ApiIndex for the API's current sources
+     */
+    static ApiIndex open(ApiConfig config, ApiConfig.Api api, int order) throws Exception {
+        long checksum = config.checksum(api);
+        File snapshot = new File(config.getDirectory(), String.format("api-%s-%016x.idx", api.id, checksum));
+        SourceLines sources = null;
+
+        if (api.type == ApiConfig.Api.SOURCE && config.getSources(api) != null) {
+            try {
+                sources = SourceLines.open(config.getSources(api));
+            } catch (Exception e) {
+                System.err.println("Could not read the sources of " + api.id + ": " + e);
+            }
+        }
+
+        ApiIndex index = null;
+        if (snapshot.isFile()) {
+            try {
+                if (isCurrent(snapshot, checksum))
+                    index = map(snapshot, order, sources);
+            } catch (Exception e) {
+                System.err.println("Discarding unreadable API snapshot " + snapshot.getName() + ": " + e);
+            }
+        }
+
+        if (index == null) {
+            new ApiIndexBuilder(api).parse(config.getDirectory(), sources).write(snapshot, checksum);
+            index = map(snapshot, order, sources);
+        }
+
+        deleteStaleSnapshots(config.getDirectory(), api, snapshot);
+        return index;
+    }
+
+    /**
+     * Returns whether a snapshot has the current format and was built from
+     * sources with the given checksum. Only the header is read, without
+     * mapping the file.
+     */
+    private static boolean isCurrent(File snapshot, long checksum) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(16);
+        try (RandomAccessFile raf = new RandomAccessFile(snapshot, "r"); FileChannel channel = raf.getChannel()) {
+            while (header.hasRemaining() && channel.read(header) != -1)
+                ;
+        }
+        return !header.hasRemaining() && header.getInt(0) == MAGIC && header.getInt(4) == VERSION && header.getLong(8) == checksum;
+    }
+
+    /**
+     * Deletes the snapshots of an API other than the current one. A snapshot
+     * that is still mapped may not be deleted yet; it is tried again the next
+     * time the API is opened.
+     */
+    private static void deleteStaleSnapshots(File directory, ApiConfig.Api api, File current) {
+        String pattern = "api-" + Pattern.quote(api.id) + "(-\\p{XDigit}{16})?\\.idx";
+        File[] files = directory.listFiles((dir, name) -> name.matches(pattern));
+        if (files == null)
+            return;
+
+        for (File file : files)
+            if (!file.equals(current) && !file.delete())
+                System.err.println("Could not delete the old API snapshot " + file.getName() + " yet");
+    }
+
+    /**
+     * Memory-maps the given snapshot file. The mapping stays valid after the
+     * file is closed.
+     *
+     * @param snapshot the snapshot file
+     * @param order    the position of the API in the list of loaded APIs
+     * @param sources  the source files of the API, or null
+     * @return an ApiIndex reading from the mapped file
+     */
+    static ApiIndex map(File snapshot, int order, SourceLines sources) throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(snapshot, "r"); FileChannel channel = raf.getChannel()) {
+            return new ApiIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), order, sources);
+        }
+    }
+
+    /**
+     * Returns the API this index was built from. Its list of files is empty.
+     */
+    ApiConfig.Api getApi() {
+        return api;
+    }
+
+    /**
+     * Returns whether the source files of this API can be read, so entries
+     * can be resolved to lines.
+     */
+    boolean hasSources() {
+        return sources != null;
+    }
+
+    /**
+     * Returns the source file of an entry, read and indexed when it is first
+     * asked for.
+     *
+     * @param entry the id of the entry
+     * @return the Source, or null if the API has no sources or the entry's
+     * file is not among them
+     * @see SourceLines
+     */
+    SourceLines.Source source(int entry) throws Exception {
+        if (sources == null)
+            return null;
+        return sources.get(string(buffer.getInt(entryPackages + entry * 4)), string(buffer.getInt(entryClasses + entry * 4)));
+    }
+
+    /**
+     * Returns the number of entries in this index.
+     */
+    int entryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Returns the number of keys in the given table.
+     */
+    int keyCount(int table) {
+        return keyCounts[table];
+    }
+
+    /**
+     * Returns the key at the given position of the given table.
+     */
+    String key(int table, int keyIndex) {
+        return string(buffer.getInt(keyIds[table] + keyIndex * 4));
+    }
+
+    /**
+     * Searches the given table for a key, comparing the UTF-8 bytes of the
+     * key directly against the snapshot.
+     *
+     * @param table the table to search in
+     * @param key   the lower-case search term
+     * @return the position of the key, or -1 if it is not in the table
+     */
+    int find(int table, String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = keyCounts[table] - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(buffer.getInt(keyIds[table] + mid * 4), bytes);
+
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    /**
+     * Offers the entries of the key at the given position to a
+     * RankedResults.
+     *
+     * @param table    the table the key is in
+     * @param keyIndex the position of the key
+     * @param distance the distance of the key to the search term
+     * @param results  the RankedResults to offer the entries to
+     */
+    void addEntries(int table, int keyIndex, int distance, RankedResults results) {
+        int start = buffer.getInt(postingStarts[table] + keyIndex * 4);
+        int end = buffer.getInt(postingStarts[table] + keyIndex * 4 + 4);
+
+        for (int i = start; i < end; i++)
+            results.offer(score(buffer.getInt(postings[table] + i * 4), distance));
+    }
+
+    /**
+     * Offers the entries of all keys that start with a prefix to a
+     * RankedResults, shorter keys first. Keys are sorted, so they form a
+     * single range that is found with two binary searches.
+     *
+     * @param table   the table to search in
+     * @param prefix  the lower-case prefix
+     * @param results the RankedResults to offer the entries to
+     */
+    void addPrefixMatches(int table, String prefix, RankedResults results) {
+        byte[] bytes = prefix.getBytes(StandardCharsets.UTF_8);
+        int start = lowerBound(keyIds[table], keyCounts[table], bytes, false);
+        int end = lowerBound(keyIds[table], keyCounts[table], bytes, true);
+        BitSet seen = new BitSet();
+
+        // an entry can be found through both its simple and its qualified name
+        for (int keyIndex = start; keyIndex < end; keyIndex++) {
+            int from = buffer.getInt(postingStarts[table] + keyIndex * 4);
+            int to = buffer.getInt(postingStarts[table] + keyIndex * 4 + 4);
+            int distance = length(buffer.getInt(keyIds[table] + keyIndex * 4)) - bytes.length;
+
+            for (int i = from; i < to; i++) {
+                int entry = buffer.getInt(postings[table] + i * 4);
+                if (!seen.get(entry)) {
+                    seen.set(entry);
+                    results.offer(score(entry, distance));
+                }
+            }
+        }
+    }
+
+    /**
+     * Offers the entries whose name matches a camel hump abbreviation to a
+     * RankedResults, shorter names first. Candidates are the entries whose
+     * initials start with the initials of the abbreviation, which again form
+     * a range of the sorted initials; only those are matched against the
+     * abbreviation itself.
+     *
+     * @param table        the table to search in
+     * @param abbreviation the abbreviation as it was typed, e.g. HM.cIA
+     * @param results      the RankedResults to offer the entries to
+     * @see CamelHumps
+     */
+    void addAbbreviationMatches(int table, String abbreviation, RankedResults results) {
+        byte[] bytes = CamelHumps.initials(abbreviation).getBytes(StandardCharsets.UTF_8);
+        int start = lowerBound(humpIds[table], humpCounts[table], bytes, false);
+        int end = lowerBound(humpIds[table], humpCounts[table], bytes, true);
+        boolean qualified = abbreviation.indexOf('.') != -1;
+
+        for (int humpIndex = start; humpIndex < end; humpIndex++) {
+            // members have initials for their own name and one including their class
+            if (table != CLASSES && table != SOURCE && !qualified && string(buffer.getInt(humpIds[table] + humpIndex * 4)).indexOf('.') != -1)
+                continue;
+
+            int from = buffer.getInt(humpPostingStarts[table] + humpIndex * 4);
+            int to = buffer.getInt(humpPostingStarts[table] + humpIndex * 4 + 4);
+
+            for (int i = from; i < to; i++) {
+                int entry = buffer.getInt(humpPostings[table] + i * 4);
+                String name = name(entry, qualified);
+
+                if (CamelHumps.matches(abbreviation, name))
+                    results.offer(score(entry, name.length() - abbreviation.length()));
+            }
+        }
+    }
+
+    /**
+     * Offers the methods with a given signature to a RankedResults. The
+     * postings of the name, the parameter list and the return type the
+     * signature asks for are intersected, walking the shortest of them and
+     * looking its entries up in the others. Postings are in order of the
+     * entries, so each lookup is a binary search.
+     * <p>
+     * A name that is not that of a method is tried as a class name, which
+     * finds its constructors.
+     *
+     * @param signature the signature to look for
+     * @param results   the RankedResults to offer the entries to
+     */
+    void addSignatureMatches(Signature signature, RankedResults results) {
+        int[][] ranges = new int[3][];
+        int count = 0;
+
+        if (!signature.name.isEmpty()) {
+            int keyIndex = find(METHODS, signature.name);
+            if (keyIndex == -1)
+                keyIndex = find(METHODS, signature.name + ".<init>");
+            ranges[count++] = postingRange(METHODS, keyIndex);
+        }
+        ranges[count++] = postingRange(PARAMETER_TYPES, find(PARAMETER_TYPES, signature.parameters));
+        if (signature.returnType != null)
+            ranges[count++] = postingRange(RETURN_TYPES, find(RETURN_TYPES, signature.returnType));
+
+        int shortest = 0;
+        for (int i = 0; i < count; i++) {
+            if (ranges[i] == null)
+                return;
+            if (ranges[i][1] < ranges[shortest][1])
+                shortest = i;
+        }
+
+        outer:
+        for (int i = 0; i < ranges[shortest][1]; i++) {
+            int entry = buffer.getInt(ranges[shortest][0] + i * 4);
+            for (int j = 0; j < count; j++)
+                if (j != shortest && !containsPosting(ranges[j], entry))
+                    continue outer;
+            results.offer(score(entry, 0));
+        }
+    }
+
+    /**
+     * Returns the postings of a key as the offset of its first entry id in the
+     * snapshot and the number of entry ids, or null if the key is missing.
+     */
+    private int[] postingRange(int table, int keyIndex) {
+        if (keyIndex == -1)
+            return null;
+
+        int start = buffer.getInt(postingStarts[table] + keyIndex * 4);
+        int end = buffer.getInt(postingStarts[table] + keyIndex * 4 + 4);
+        return new int[]{postings[table] + start * 4, end - start};
+    }
+
+    private boolean containsPosting(int[] range, int entry) {
+        int low = 0;
+        int high = range[1] - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int value = buffer.getInt(range[0] + mid * 4);
+
+            if (value < entry)
+                low = mid + 1;
+            else if (value > entry)
+                high = mid - 1;
+            else
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Offers the entries whose summary or name contains any of the given
+     * words to a RankedResults, ranked by BM25. Entries that contain two
+     * consecutive words of the query next to each other score higher, so
+     * "thread safe" beats a summary that mentions thread and safe apart.
+     *
+     * @param words   the normalized words of the query
+     * @param results the RankedResults to offer the entries to
+     * @see Words
+     */
+    void addTextMatches(List<String> words, RankedResults results) {
+        if (documentCount == 0)
+            return;
+
+        TextScores scores = TEXT_SCORES.get();
+        scores.reset(entryCount);
+        int[] keys = new int[words.size()];
+        double[] idfs = new double[words.size()];
+
+        for (int w = 0; w < words.size(); w++) {
+            keys[w] = find(DOC_TERMS, words.get(w));
+            if (keys[w] == -1)
+                continue;
+
+            int start = buffer.getInt(postingStarts[DOC_TERMS] + keys[w] * 4);
+            int end = buffer.getInt(postingStarts[DOC_TERMS] + keys[w] * 4 + 4);
+            idfs[w] = Math.log(1 + (documentCount - (end - start) + 0.5) / ((end - start) + 0.5));
+
+            // a word that is repeated in the query only counts once
+            if (words.indexOf(words.get(w)) < w)
+                continue;
+
+            for (int i = start; i < end; i++) {
+                int entry = buffer.getInt(postings[DOC_TERMS] + i * 4);
+                int frequency = positionStart(i + 1) - positionStart(i);
+                double length = buffer.getInt(documentLengths + entry * 4);
+                scores.add(entry, idfs[w] * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / averageLength)));
+            }
+        }
+
+        for (int w = 1; w < words.size(); w++)
+            if (keys[w - 1] != -1 && keys[w] != -1)
+                addPhraseBonus(keys[w - 1], keys[w], (idfs[w - 1] + idfs[w]) / 2, scores);
+
+        for (int i = 0; i < scores.matchCount; i++) {
+            int entry = scores.matches[i];
+            results.offer(score(entry, (int) Math.max(0, 0x7fff - Math.round(scores.scores[entry] * 100))));
+        }
+    }
+
+    /**
+     * Adds a bonus to the score of every entry in which the second word
+     * directly follows the first. Both postings are in order of the entries,
+     * so they are intersected in a single pass.
+     */
+    private void addPhraseBonus(int first, int second, double bonus, TextScores scores) {
+        int i = buffer.getInt(postingStarts[DOC_TERMS] + first * 4);
+        int firstEnd = buffer.getInt(postingStarts[DOC_TERMS] + first * 4 + 4);
+        int j = buffer.getInt(postingStarts[DOC_TERMS] + second * 4);
+        int secondEnd = buffer.getInt(postingStarts[DOC_TERMS] + second * 4 + 4);
+
+        while (i < firstEnd && j < secondEnd) {
+            int a = buffer.getInt(postings[DOC_TERMS] + i * 4);
+            int b = buffer.getInt(postings[DOC_TERMS] + j * 4);
+
+            if (a < b) {
+                i++;
+            } else if (a > b) {
+                j++;
+            } else {
+                if (isAdjacent(i, j))
+                    scores.add(a, bonus);
+                i++;
+                j++;
+            }
+        }
+    }
+
+    /**
+     * Returns whether any position of one posting is directly followed by a
+     * position of another. Positions are sorted, so this is a merge as well.
+     */
+    private boolean isAdjacent(int first, int second) {
+        int i = positionStart(first);
+        int j = positionStart(second);
+        int firstEnd = positionStart(first + 1);
+        int secondEnd = positionStart(second + 1);
+
+        while (i < firstEnd && j < secondEnd) {
+            int a = buffer.get(positions + i) & 0xff;
+            int b = buffer.get(positions + j) & 0xff;
+
+            if (a + 1 == b)
+                return true;
+            if (a + 1 < b)
+                i++;
+            else
+                j++;
+        }
+        return false;
+    }
+
+    private int positionStart(int posting) {
+        return buffer.getInt(positionStarts + posting * 4);
+    }
+
+    /**
+     * Scores an entry for a RankedResults. Entries are ranked by the distance
+     * of the key they were found by, then by the order of their api in
+     * api.xml and then by how commonly used their package is. Any remaining
+     * ties are broken by the order of the entries, which is the order of the
+     * index files.
+     *
+     * @param entry    the id of the entry
+     * @param distance the distance of the key to the search term
+     * @return the score of the entry, holding the order of its api and its id
+     * @see #order(long)
+     * @see #entry(long)
+     */
+    long score(int entry, int distance) {
+        return (long) Math.min(distance, 0x7fff) << 48 | (long) Math.min(order, 0xfff) << 36 | (long) popularity(entry) << 32 | entry;
+    }
+
+    /**
+     * Returns the position of the api of a scored entry in the list of loaded
+     * APIs, see openAll().
+     */
+    static int order(long score) {
+        return (int) (score >>> 36) & 0xfff;
+    }
+
+    /**
+     * Returns the id of a scored entry.
+     */
+    static int entry(long score) {
+        return (int) score;
+    }
+
+    /**
+     * Ranks the package of an entry: java.lang first, then java.util, then
+     * everything else in java, then javax and then all other packages.
+     */
+    private int popularity(int entry) {
+        int pack = buffer.getInt(entryPackages + entry * 4);
+
+        if (compare(pack, JAVA_LANG) == 0)
+            return 0;
+        if (compare(pack, JAVA_UTIL) == 0)
+            return 1;
+        if (startsWith(pack, JAVA))
+            return 2;
+        if (startsWith(pack, JAVAX))
+            return 3;
+        return 4;
+    }
+
+    /**
+     * Returns the name of an entry as it is written in the API: the class
+     * name for a class, otherwise the member name, optionally preceded by the
+     * class name.
+     */
+    private String name(int entry, boolean qualified) {
+        String className = string(buffer.getInt(entryClasses + entry * 4));
+        int member = buffer.getInt(entryMembers + entry * 4);
+
+        if (member == -1)
+            return className;
+
+        String memberName = memberName(string(member));
+        return qualified ? className + "." + memberName : memberName;
+    }
+
+    /**
+     * Strips the parameter list from a javadoc member anchor, which is written
+     * as name-int-int- in Java 8 and later and as name(int, int) before.
+     *
+     * @param anchor the anchor of the member
+     * @return the name of the member
+     */
+    static String memberName(String anchor) {
+        for (int i = 0; i < anchor.length(); i++)
+            if (anchor.charAt(i) == '-' || anchor.charAt(i) == '(')
+                return anchor.substring(0, i);
+        return anchor;
+    }
+
+    /**
+     * Puts together the url of an entry.
+     *
+     * @param entry the id of the entry
+     * @return the full url of the entry
+     */
+    String url(int entry) {
+        int module = buffer.getInt(entryModules + entry * 4);
+        StringBuilder url = new StringBuilder(module == -1 ? api.baseurl : api.baseurl.replace("{module}", string(module)));
+        url.append(string(buffer.getInt(entryPackages + entry * 4)).replace('.', '/'));
+        url.append('/').append(string(buffer.getInt(entryClasses + entry * 4)));
+
+        if (api.type == ApiConfig.Api.SOURCE)
+            return url.append(".java").append(api.affix).toString();
+
+        url.append(".html");
+        int member = buffer.getInt(entryMembers + entry * 4);
+        if (member != -1)
+            url.append('#').append(string(member));
+
+        return url.toString().replace("(", "%28").replace(")", "%29").replace(" ", "%20").replace("<", "%3C").replace(">", "%3E");
+    }
+
+    /**
+     * Describes the size of this index: the number of entries and keys, and
+     * how much of the mapped snapshot each part takes up. Apart from a few
+     * offsets, none of it is kept on the heap.
+     */
+    String describe() {
+        int keys = 0;
+        long keyBytes = 0;
+        long postingBytes = 0;
+        long treeBytes = 0;
+        long humpBytes = 0;
+        long textBytes = 16 + entryCount * 4L + (keyCounts[DOC_TERMS] * 2 + 1) * 4L
+                + buffer.getInt(postingStarts[DOC_TERMS] + keyCounts[DOC_TERMS] * 4) * 8L + (buffer.capacity() - positions);
+
+        for (int table = 0; table < KEY_TABLE_COUNT; table++) {
+            if (table == DOC_TERMS)
+                continue;
+            keys += keyCounts[table];
+            keyBytes += keyCounts[table] * 4L;
+            postingBytes += (keyCounts[table] + 1) * 4L + buffer.getInt(postingStarts[table] + keyCounts[table] * 4) * 4L;
+        }
+
+        for (int table = 0; table < TABLE_COUNT; table++) {
+            humpBytes += 4 + (humpCounts[table] * 2 + 1) * 4L + buffer.getInt(humpPostingStarts[table] + humpCounts[table] * 4) * 4L;
+            treeBytes += 4 + keyCounts[table] * 12L;
+        }
+
+        return String.format("%s: %d entries, %d keys, %d words; snapshot %s: strings %s, entries %s, keys %s, postings %s, fuzzy trees %s, camel humps %s, full text %s",
+                api.id, entryCount, keys, keyCounts[DOC_TERMS], megabytes(buffer.capacity()), megabytes(entryModules - 4 - stringOffsets),
+                megabytes(entryCount * 16L), megabytes(keyBytes), megabytes(postingBytes), megabytes(treeBytes), megabytes(humpBytes), megabytes(textBytes));
+    }
+
+    private static String megabytes(long bytes) {
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
+    /**
+     * Finds the keys of a table with the lowest Damerau-Levenshtein distance
+     * to a term, as long as that distance is not higher than a given limit.
+     * <p>
+     * The BK-tree is organized by Levenshtein distance, which unlike
+     * Damerau-Levenshtein satisfies the triangle inequality. A key within
+     * Damerau-Levenshtein distance d of the term is within Levenshtein
+     * distance 2d, so subtrees are only skipped when they cannot contain a key
+     * at Levenshtein distance 2 * best or less. This finds exactly the same
+     * keys as comparing the term against every key.
+     *
+     * @param table   the table to search in
+     * @param term    the lower-case search term
+     * @param limit   the highest distance of interest, e.g. the best distance
+     *                found in another table
+     * @param matches receives the positions of the best keys; it is cleared
+     *                when a key closer than limit is found
+     * @return the distance of the keys in matches, or limit if none were found
+     */
+    int nearest(int table, String term, int limit, List<Integer> matches) {
+        int root = treeRoots[table];
+        if (root == -1)
+            return limit;
+
+        CharBuffer key = CharBuffer.allocate(64);
+        int best = Math.min(limit, Integer.MAX_VALUE / 2);
+
+        // descend towards the term first, so the full search starts with a tight bound
+        for (int node = root; node != -1; ) {
+            key = decode(buffer.getInt(keyIds[table] + node * 4), key);
+            int distance = EditDistance.levenshtein(term, key);
+            best = Math.min(best, EditDistance.damLevDistance(term, key, best));
+
+            int closest = -1;
+            for (int child = firstChild(table, node); child != -1; child = nextSibling(table, child))
+                if (closest == -1 || Math.abs(parentDistance(table, child) - distance) < Math.abs(parentDistance(table, closest) - distance))
+                    closest = child;
+            node = closest;
+        }
+
+        int[] stack = new int[64];
+        int size = 0;
+        stack[size++] = root;
+
+        while (size > 0) {
+            int node = stack[--size];
+            int farthestChild = 0;
+            for (int child = firstChild(table, node); child != -1; child = nextSibling(table, child))
+                farthestChild = Math.max(farthestChild, parentDistance(table, child));
+
+            // neither this key nor any of its children can match if the term is further away
+            int cutoff = (int) Math.min(Integer.MAX_VALUE - 1, farthestChild + 2L * best);
+            key = decode(buffer.getInt(keyIds[table] + node * 4), key);
+            int distance = EditDistance.levenshtein(term, key, cutoff);
+
+            if (distance > cutoff)
+                continue;
+
+            if ((distance + 1) / 2 <= best) {
+                int damLev = EditDistance.damLevDistance(term, key, best);
+
+                if (damLev < best) {
+                    best = damLev;
+                    matches.clear();
+                }
+                if (damLev == best)
+                    matches.add(node);
+            }
+
+            for (int child = firstChild(table, node); child != -1; child = nextSibling(table, child)) {
+                if (Math.abs(parentDistance(table, child) - distance) <= 2 * best) {
+                    if (size == stack.length)
+                        stack = Arrays.copyOf(stack, size * 2);
+                    stack[size++] = child;
+                }
+            }
+        }
+        return matches.isEmpty() ? limit : best;
+    }
+
+    private int parentDistance(int table, int node) {
+        return buffer.getInt(parentDistances[table] + node * 4);
+    }
+
+    private int firstChild(int table, int node) {
+        return buffer.getInt(firstChildren[table] + node * 4);
+    }
+
+    private int nextSibling(int table, int node) {
+        return buffer.getInt(nextSiblings[table] + node * 4);
+    }
+
+    /**
+     * Decodes a string into a reusable CharBuffer, so keys can be compared
+     * without creating a String for each of them.
+     *
+     * @param id     the id of the string
+     * @param target the buffer to decode into
+     * @return target, or a larger buffer if the string did not fit
+     */
+    private CharBuffer decode(int id, CharBuffer target) {
+        int start = stringData + buffer.getInt(stringOffsets + id * 4);
+        int end = stringData + buffer.getInt(stringOffsets + id * 4 + 4);
+
+        if (target.capacity() < end - start)
+            target = CharBuffer.allocate(end - start);
+        target.clear();
+
+        for (int i = start; i < end; i++) {
+            int b = buffer.get(i) & 0xff;
+
+            if (b < 0x80) {
+                target.put((char) b);
+            } else if (b < 0xe0) {
+                target.put((char) (((b & 0x1f) << 6) | (buffer.get(++i) & 0x3f)));
+            } else {
+                int b2 = buffer.get(++i) & 0x3f;
+                target.put((char) (((b & 0x0f) << 12) | (b2 << 6) | (buffer.get(++i) & 0x3f)));
+            }
+        }
+        target.flip();
+        return target;
+    }
+
+    private String string(int id) {
+        int start = buffer.getInt(stringOffsets + id * 4);
+        int end = buffer.getInt(stringOffsets + id * 4 + 4);
+        byte[] bytes = new byte[end - start];
+
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = buffer.get(stringData + start + i);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the position of the first of a number of sorted strings that
+     * is not before a prefix or, if past is set, that does not start with it
+     * and is not before it.
+     *
+     * @param ids    the offset of the sorted string ids
+     * @param count  the number of strings
+     * @param prefix the UTF-8 bytes of the prefix
+     * @param past   whether strings starting with the prefix count as before
+     *               it
+     * @return the position of the first string at or past prefix
+     */
+    private int lowerBound(int ids, int count, byte[] prefix, boolean past) {
+        int low = 0;
+        int high = count;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int id = buffer.getInt(ids + mid * 4);
+            int cmp = past && startsWith(id, prefix) ? -1 : compare(id, prefix);
+
+            if (cmp < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private int length(int id) {
+        return buffer.getInt(stringOffsets + id * 4 + 4) - buffer.getInt(stringOffsets + id * 4);
+    }
+
+    private boolean startsWith(int id, byte[] prefix) {
+        int start = buffer.getInt(stringOffsets + id * 4);
+        int length = buffer.getInt(stringOffsets + id * 4 + 4) - start;
+
+        if (length < prefix.length)
+            return false;
+
+        for (int i = 0; i < prefix.length; i++)
+            if (buffer.get(stringData + start + i) != prefix[i])
+                return false;
+        return true;
+    }
+
+    private int compare(int id, byte[] bytes) {
+        int start = buffer.getInt(stringOffsets + id * 4);
+        int length = buffer.getInt(stringOffsets + id * 4 + 4) - start;
+        int common = Math.min(length, bytes.length);
+
+        for (int i = 0; i < common; i++) {
+            int cmp = (buffer.get(stringData + start + i) & 0xff) - (bytes[i] & 0xff);
+            if (cmp != 0)
+                return cmp;
+        }
+        return length - bytes.length;
+    }
+
+    /**
+     * The BM25 scores of the entries matched by a full-text search. Only the
+     * entries that were matched are visited and cleared again, so reusing
+     * the scores costs as much as the postings that were read, not the size
+     * of the index.
+     */
+    private static class TextScores {
+        double[] scores = new double[0];
+        int[] matches = new int[0];
+        int matchCount;
+
+        /**
+         * Clears the scores of the previous search and makes room for the
+         * entries of an index.
+         */
+        void reset(int entryCount) {
+            for (int i = 0; i < matchCount; i++)
+                scores[matches[i]] = 0;
+            matchCount = 0;
+
+            if (scores.length < entryCount)
+                scores = new double[entryCount];
+        }
+
+        void add(int entry, double score) {
+            if (scores[entry] == 0) {
+                if (matchCount == matches.length)
+                    matches = Arrays.copyOf(matches, Math.max(64, matchCount * 2));
+                matches[matchCount++] = entry;
+            }
+            scores[entry] += score;
+        }
+    }
+}
@@ -0,0 +1,837 @@
+package commands;
+
+import botster.EditDistance;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Parses the javadoc index pages, source listing or class files of one API
+ * described by api.xml and writes them to an ApiIndex snapshot.
+ * <p>
+ * Every file, and every module of the runtime image, is parsed by its own
+ * task on the common fork-join pool into a partial set of terms. The partial
+ * results are merged in the order of api.xml, so the resulting index does not
+ * depend on which task finishes first.
+ */
+class ApiIndexBuilder {
+    public static final int URL_START_LENGTH = 13;
+    private static final byte[] ENTRY_START = "<dt>".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] SUMMARY_START = "<dd>".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] SUMMARY_END = "</dd>".getBytes(StandardCharsets.ISO_8859_1);
+    private static final int MAX_POSITION = 255;
+    private static final int PARALLEL_TREE_THRESHOLD = 1000;
+    private final Terms terms = new Terms();
+    private final ApiConfig.Api api;
+
+    /**
+     * Creates a new instance of ApiIndexBuilder.
+     *
+     * @param api the API to build an index for
+     */
+    ApiIndexBuilder(ApiConfig.Api api) {
+        this.api = api;
+    }
+
+    /**
+     * Parses all of the files of the API in parallel. Files that cannot be
+     * read are reported and skipped. A source listing without files lists
+     * the files of its sources instead.
+     *
+     * @param directory the apidata directory
+     * @param sources   the source files of the API, or null
+     * @return this builder
+     */
+    ApiIndexBuilder parse(File directory, SourceLines sources) {
+        List<ForkJoinTask<Terms>> tasks = new ArrayList<>();
+
+        if (api.type == ApiConfig.Api.SOURCE && api.files.isEmpty() && sources != null)
+            tasks.add(ForkJoinPool.commonPool().submit(() -> parseSources(sources)));
+
+        if (api.runtime)
+            for (Path module : runtimeModules())
+                tasks.add(ForkJoinPool.commonPool().submit(() -> parseModule(module)));
+
+        for (String file : api.files)
+            tasks.add(ForkJoinPool.commonPool().submit(() -> parseFile(new File(directory, file), api)));
+
+        for (ForkJoinTask<Terms> task : tasks)
+            terms.merge(task.join());
+
+        return this;
+    }
+
+    private static Terms parseFile(File file, ApiConfig.Api api) {
+        Terms terms = new Terms();
+        try {
+            if (api.type == ApiConfig.Api.SOURCE)
+                parseSrc(terms, file);
+            else if (api.type == ApiConfig.Api.CLASSES)
+                parseJar(terms, file);
+            else
+                parse(terms, file, api.affix);
+        } catch (Exception e) {
+            System.err.println("Could not read API file " + file.getName() + ": " + e);
+        }
+        return terms;
+    }
+
+    /**
+     * Lists the modules of the running JDK, in order of their names. The
+     * jrt:/ file system only exists on Java 9 and later.
+     *
+     * @return the directories of the modules in the jrt:/ file system
+     */
+    private static List<Path> runtimeModules() {
+        try (Stream<Path> modules = Files.list(FileSystems.getFileSystem(URI.create("jrt:/")).getPath("/modules"))) {
+            return modules.sorted().collect(Collectors.toList());
+        } catch (Exception e) {
+            System.err.println("Could not read the runtime image of the running JDK: " + e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Parses the class files of all packages a module of the runtime image
+     * exports to everyone.
+     *
+     * @param module the directory of the module in the jrt:/ file system
+     */
+    private static Terms parseModule(Path module) {
+        Terms terms = new Terms();
+        String moduleName = module.getFileName().toString().replace("/", "");
+
+        try {
+            Set<String> exports = new HashSet<>(ClassFile.read(ByteBuffer.wrap(Files.readAllBytes(module.resolve("module-info.class")))).exports);
+            List<Path> classes;
+
+            try (Stream<Path> files = Files.walk(module)) {
+                classes = files.filter((path) -> path.toString().endsWith(".class")).sorted().collect(Collectors.toList());
+            }
+
+            for (Path path : classes) {
+                String pack = module.relativize(path.getParent() == null ? module : path.getParent()).toString();
+                if (exports.contains(pack))
+                    handleClass(terms, moduleName, ClassFile.read(ByteBuffer.wrap(Files.readAllBytes(path))));
+            }
+        } catch (Exception e) {
+            System.err.println("Could not read module " + moduleName + ": " + e);
+        }
+        return terms;
+    }
+
+    /**
+     * Parses all class files in a jar.
+     *
+     * @param terms the terms to add the classes to
+     * @param file  the jar to parse
+     */
+    private static void parseJar(Terms terms, File file) throws Exception {
+        try (ZipFile jar = new ZipFile(file)) {
+            Enumeration<? extends ZipEntry> entries = jar.entries();
+
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+
+                if (!name.endsWith(".class") || name.startsWith("META-INF/") || name.endsWith("module-info.class"))
+                    continue;
+
+                try (InputStream in = jar.getInputStream(entry)) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.max(entry.getSize(), 0));
+                    byte[] chunk = new byte[8192];
+                    for (int read; (read = in.read(chunk)) != -1; )
+                        bytes.write(chunk, 0, read);
+                    handleClass(terms, null, ClassFile.read(ByteBuffer.wrap(bytes.toByteArray())));
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles a single class file: the class itself and all of its documented
+     * fields, methods and constructors. Anchors follow the javadoc of Java 10
+     * and later, e.g. computeIfAbsent(K,java.util.function.Function).
+     *
+     * @param terms  the terms to add the entries to
+     * @param module the module of the class, or null
+     * @param file   the class file
+     */
+    private static void handleClass(Terms terms, String module, ClassFile file) {
+        int slashIndex = file.name.lastIndexOf('/');
+        String pack = file.name.substring(0, Math.max(slashIndex, 0)).replace('/', '.');
+        String binaryName = file.name.substring(slashIndex + 1);
+
+        // anonymous and local classes are not part of any API
+        if (!ClassFile.isDocumented(file.access) || binaryName.matches(".*\\$\\d.*"))
+            return;
+
+        String className = binaryName.replace('$', '.');
+        addClass(terms, module, pack, className);
+
+        for (ClassFile.Member field : file.fields)
+            if (ClassFile.isDocumented(field.access))
+                addField(terms, module, pack, className, field.name, field.name);
+
+        for (ClassFile.Member method : file.methods) {
+            if (ClassFile.isDocumented(method.access) && (method.access & ClassFile.ACC_BRIDGE) == 0 && !method.name.equals("<clinit>")) {
+                String returnType = method.name.equals("<init>") ? null : ClassFile.returnType(method);
+                addMethod(terms, module, pack, className, method.name, method.name + ClassFile.parameters(method), returnType);
+            }
+        }
+    }
+
+    private static void parseSrc(Terms terms, File file) throws Exception {
+        try (final BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), "ISO-8859-1"))) {
+            String line;
+            while ((line = br.readLine()) != null)
+                addSource(terms, line);
+        }
+    }
+
+    /**
+     * Lists the files of a src.zip or source directory, leaving out
+     * module-info.java and package-info.java.
+     *
+     * @param sources the source files
+     */
+    private static Terms parseSources(SourceLines sources) {
+        Terms terms = new Terms();
+        for (String path : sources.paths())
+            if (!path.endsWith("-info.java"))
+                addSource(terms, path);
+        return terms;
+    }
+
+    /**
+     * Adds a source file by its path, e.g. java/lang/String.java.
+     */
+    private static void addSource(Terms terms, String path) {
+        int packEnd = path.lastIndexOf('/');
+        String pack = packEnd == -1 ? "" : path.substring(0, packEnd).replace('/', '.');
+        String className = path.substring(packEnd + 1);
+
+        // remove .java
+        className = className.substring(0, className.length() - 5);
+
+        int entry = terms.addEntry(null, pack, className, null);
+
+        terms.add(ApiIndex.SOURCE, className, entry);
+        terms.add(ApiIndex.SOURCE, pack + "." + className, entry);
+        terms.addHumps(ApiIndex.SOURCE, className, entry);
+    }
+
+    /**
+     * Parses a given javadoc index file and adds all of the classes, methods
+     * and fields to the relevant tables. The file is memory-mapped and scanned
+     * byte by byte; ISO-8859-1 maps every byte to one character, so the url of
+     * an entry can be turned into a String directly, without reading lines.
+     * The summary in the &lt;dd&gt; following an entry is kept for the
+     * full-text index.
+     *
+     * @param terms the terms to add the entries to
+     * @param file  the file to parse
+     */
+    private static void parse(Terms terms, File file, String urlprefix) throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int limit = buffer.limit();
+            int urlOffset = URL_START_LENGTH + urlprefix.length();
+            byte[] url = new byte[256];
+
+            for (int entry = indexOf(buffer, ENTRY_START, 0, limit), next; entry != -1; entry = next) {
+                next = indexOf(buffer, ENTRY_START, entry + 1, limit);
+                int length = 0;
+                int i = entry + urlOffset;
+
+                // the url ends at the next quote, which has to be on the same line
+                while (i < limit && buffer.get(i) != '"' && buffer.get(i) != '\n') {
+                    if (length == url.length)
+                        url = Arrays.copyOf(url, length * 2);
+                    url[length++] = buffer.get(i++);
+                }
+
+                if (i < limit && buffer.get(i) == '"')
+                    handleEntry(terms, new String(url, 0, length, StandardCharsets.ISO_8859_1), summary(buffer, i, next == -1 ? limit : next));
+            }
+        }
+    }
+
+    /**
+     * Returns the text of the &lt;dd&gt; of an entry, without markup, or an
+     * empty String if the entry has none.
+     *
+     * @param buffer the index file
+     * @param from   a position within the entry's &lt;dt&gt;
+     * @param to     the start of the next entry
+     */
+    private static String summary(MappedByteBuffer buffer, int from, int to) {
+        int start = indexOf(buffer, SUMMARY_START, from, to);
+        if (start == -1)
+            return "";
+
+        int end = indexOf(buffer, SUMMARY_END, start, to);
+        if (end == -1)
+            end = to;
+
+        StringBuilder text = new StringBuilder();
+        boolean tag = false;
+        for (int i = start + SUMMARY_START.length; i < end; i++) {
+            char c = (char) (buffer.get(i) & 0xff);
+
+            if (c == '<')
+                tag = true;
+            else if (c == '>')
+                tag = false;
+            else if (!tag)
+                text.append(c == '\n' ? ' ' : c);
+        }
+        return text.toString().replace("&lt;", "<").replace("&gt;", ">").replace("&nbsp;", " ").replace("&amp;", "&").trim();
+    }
+
+    private static int indexOf(MappedByteBuffer buffer, byte[] pattern, int from, int to) {
+        int last = to - pattern.length;
+
+        outer:
+        for (int i = from; i <= last; i++) {
+            for (int j = 0; j < pattern.length; j++)
+                if (buffer.get(i + j) != pattern[j])
+                    continue outer;
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Handles a single entry from the text files that we're parsing
+     *
+     * @param terms   the terms to add the entry to
+     * @param url     the url of the entry, relative to the api's baseurl
+     * @param summary the summary of the entry
+     */
+    private static void handleEntry(Terms terms, String url, String summary) {
+        int slashIndex = url.lastIndexOf("/");
+
+        String pack = url.substring(0, slashIndex);
+        pack = pack.replace('/', '.');
+        String name = url.substring(slashIndex + 1);
+
+        int hashPos = name.indexOf('#');
+
+        if (hashPos == -1) {
+            terms.setSummary(addClass(terms, null, pack, name.substring(0, name.length() - 5)), summary);
+        } else {
+            String className = name.substring(0, hashPos - 5);
+            String member = name.substring(hashPos + 1);
+
+            // name-int-char:A- since Java 8, name(int, char[]) before
+            if (member.endsWith("-") || member.endsWith(")")) {
+                String methodName = ApiIndex.memberName(member);
+
+                if (methodName.equals(className))
+                    methodName = "<init>";
+
+                // the index pages do not mention return types
+                terms.setSummary(addMethod(terms, null, pack, className, methodName, member, null), summary);
+            } else {
+                terms.setSummary(addField(terms, null, pack, className, member, member), summary);
+            }
+        }
+    }
+
+    private static int addClass(Terms terms, String module, String pack, String className) {
+        int entry = terms.addEntry(module, pack, className, null);
+        terms.add(ApiIndex.CLASSES, className, entry);
+        terms.add(ApiIndex.CLASSES, pack + "." + className, entry);
+        terms.addHumps(ApiIndex.CLASSES, className, entry);
+        return entry;
+    }
+
+    /**
+     * Adds a method or constructor. Besides its names, its parameter list and
+     * return type are added to the signature tables.
+     *
+     * @param returnType the return type, or null if it is not known
+     * @return the id of the new entry
+     * @see Signature
+     */
+    private static int addMethod(Terms terms, String module, String pack, String className, String methodName, String anchor, String returnType) {
+        int entry = terms.addEntry(module, pack, className, anchor);
+        terms.add(ApiIndex.PARAMETER_TYPES, Signature.anchorParameters(anchor), entry);
+        if (returnType != null)
+            terms.add(ApiIndex.RETURN_TYPES, Signature.type(returnType), entry);
+
+        if (!methodName.equals("<init>")) {
+            terms.add(ApiIndex.METHODS, methodName, entry);
+            terms.addHumps(ApiIndex.METHODS, methodName, entry);
+            terms.addHumps(ApiIndex.METHODS, className + "." + methodName, entry);
+        }
+
+        terms.add(ApiIndex.METHODS, className + "." + methodName, entry);
+        terms.add(ApiIndex.METHODS, pack + "." + className + "." + methodName, entry);
+        return entry;
+    }
+
+    private static int addField(Terms terms, String module, String pack, String className, String fieldName, String anchor) {
+        int entry = terms.addEntry(module, pack, className, anchor);
+        terms.add(ApiIndex.FIELDS, fieldName, entry);
+        terms.add(ApiIndex.FIELDS, className + "." + fieldName, entry);
+        terms.add(ApiIndex.FIELDS, pack + "." + className + "." + fieldName, entry);
+        terms.addHumps(ApiIndex.FIELDS, ApiIndex.memberName(fieldName), entry);
+        terms.addHumps(ApiIndex.FIELDS, className + "." + ApiIndex.memberName(fieldName), entry);
+        return entry;
+    }
+
+    /**
+     * Writes the parsed API to a snapshot file. The snapshot is written to a
+     * temporary file first and then moved in place, so readers never see a
+     * partially written snapshot; if that fails, the temporary file is
+     * deleted again.
+     *
+     * @param snapshot the file to write
+     * @param checksum the checksum of the sources the snapshot was built from
+     */
+    void write(File snapshot, long checksum) throws Exception {
+        StringTable strings = new StringTable();
+        strings.add(api.id);
+        strings.add(api.name);
+        strings.add(api.baseurl);
+        strings.add(api.affix);
+
+        for (Entry entry : terms.entries) {
+            if (entry.module != null)
+                strings.add(entry.module);
+            strings.add(entry.pack);
+            strings.add(entry.className);
+            if (entry.member != null)
+                strings.add(entry.member);
+        }
+
+        // the full-text table is built from the summaries of all entries at once
+        FullText text = new FullText(terms.entries);
+        List<Map<String, List<Integer>>> tables = new ArrayList<>(terms.tables);
+        tables.set(ApiIndex.DOC_TERMS, text.postings);
+
+        List<String[]> sortedKeys = new ArrayList<>();
+        for (Map<String, List<Integer>> table : tables) {
+            String[] keys = table.keySet().toArray(new String[0]);
+            Arrays.sort(keys);
+            sortedKeys.add(keys);
+
+            for (String key : keys)
+                strings.add(key);
+        }
+
+        List<String[]> sortedHumps = new ArrayList<>();
+        for (Map<String, List<Integer>> table : terms.humps) {
+            String[] humps = table.keySet().toArray(new String[0]);
+            Arrays.sort(humps);
+            sortedHumps.add(humps);
+
+            for (String hump : humps)
+                strings.add(hump);
+        }
+
+        // a unique name, since an older APICommand may still be rebuilding the same snapshot after a reload
+        File temp = File.createTempFile(snapshot.getName(), ".tmp", snapshot.getAbsoluteFile().getParentFile());
+        boolean moved = false;
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(ApiIndex.MAGIC);
+                out.writeInt(ApiIndex.VERSION);
+                out.writeLong(checksum);
+
+                out.writeInt(strings.id(api.id));
+                out.writeInt(strings.id(api.name));
+                out.writeInt(strings.id(api.baseurl));
+                out.writeInt(strings.id(api.affix));
+                out.writeInt(api.type);
+
+                strings.write(out);
+
+                out.writeInt(terms.entries.size());
+                for (Entry entry : terms.entries)
+                    out.writeInt(entry.module == null ? -1 : strings.id(entry.module));
+                for (Entry entry : terms.entries)
+                    out.writeInt(strings.id(entry.pack));
+                for (Entry entry : terms.entries)
+                    out.writeInt(strings.id(entry.className));
+                for (Entry entry : terms.entries)
+                    out.writeInt(entry.member == null ? -1 : strings.id(entry.member));
+
+                for (int i = 0; i < ApiIndex.TABLE_COUNT; i++) {
+                    writeKeys(out, strings, sortedKeys.get(i), terms.tables.get(i));
+                    writeFuzzyTree(out, sortedKeys.get(i));
+                    writeKeys(out, strings, sortedHumps.get(i), terms.humps.get(i));
+                }
+
+                // signatures and words are only ever looked up exactly, so they need no fuzzy tree or initials
+                for (int i = ApiIndex.TABLE_COUNT; i < ApiIndex.KEY_TABLE_COUNT; i++)
+                    writeKeys(out, strings, sortedKeys.get(i), tables.get(i));
+
+                text.write(out, sortedKeys.get(ApiIndex.DOC_TERMS));
+            }
+            Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+        } finally {
+            if (!moved && !temp.delete())
+                System.err.println("Could not delete " + temp.getName());
+        }
+    }
+
+    /**
+     * Writes sorted keys as their count and string ids, followed by the start
+     * of each key's postings and the entry ids of all postings.
+     *
+     * @param out     the stream to write to
+     * @param strings the string table of the snapshot
+     * @param keys    the sorted keys
+     * @param table   the entries of each key
+     */
+    private static void writeKeys(DataOutputStream out, StringTable strings, String[] keys, Map<String, List<Integer>> table) throws IOException {
+        out.writeInt(keys.length);
+        for (String key : keys)
+            out.writeInt(strings.id(key));
+
+        int postingStart = 0;
+        for (String key : keys) {
+            out.writeInt(postingStart);
+            postingStart += table.get(key).size();
+        }
+        out.writeInt(postingStart);
+
+        for (String key : keys)
+            for (int entry : table.get(key))
+                out.writeInt(entry);
+    }
+
+    /**
+     * Builds a BK-tree over the keys of a table and writes it as its root,
+     * followed by the distance of each key to its parent, the first child of
+     * each key and the next sibling of each key. Nodes are identified by the
+     * position of their key in the sorted key table, -1 marks a missing node.
+     * <p>
+     * Keys are shuffled into a fixed pseudo-random order first, since building
+     * the tree from sorted keys produces a badly balanced tree.
+     *
+     * @param out  the stream to write to
+     * @param keys the sorted keys of the table
+     */
+    private static void writeFuzzyTree(DataOutputStream out, String[] keys) throws IOException {
+        FuzzyTree tree = new FuzzyTree(keys);
+
+        List<Integer> order = new ArrayList<>(keys.length);
+        for (int i = 0; i < keys.length; i++)
+            order.add(i);
+        Collections.shuffle(order, new Random(keys.length));
+
+        int root = order.isEmpty() ? -1 : order.get(0);
+
+        if (root != -1) {
+            int[] members = new int[order.size() - 1];
+            for (int i = 1; i < order.size(); i++)
+                members[i - 1] = order.get(i);
+            ForkJoinPool.commonPool().invoke(tree.new Subtree(root, members));
+        }
+
+        out.writeInt(root);
+        for (int[] column : new int[][]{tree.parentDistance, tree.firstChild, tree.nextSibling})
+            for (int value : column)
+                out.writeInt(value);
+    }
+
+    /**
+     * A BK-tree under construction. Rather than inserting keys one by one, it
+     * is built top-down: the keys below a node are grouped by their distance
+     * to it, and the first key of each group becomes the child for that
+     * distance with the rest of the group below it. Subtrees share no nodes,
+     * so they are built in parallel.
+     */
+    private static class FuzzyTree {
+        final String[] keys;
+        final int[] parentDistance;
+        final int[] firstChild;
+        final int[] nextSibling;
+
+        FuzzyTree(String[] keys) {
+            this.keys = keys;
+            parentDistance = new int[keys.length];
+            firstChild = new int[keys.length];
+            nextSibling = new int[keys.length];
+            Arrays.fill(firstChild, -1);
+            Arrays.fill(nextSibling, -1);
+        }
+
+        class Subtree extends RecursiveAction {
+            private final int node;
+            private final int[] members;
+
+            Subtree(int node, int[] members) {
+                this.node = node;
+                this.members = members;
+            }
+
+            @Override
+            protected void compute() {
+                Map<Integer, List<Integer>> groups = new TreeMap<>();
+                for (int member : members)
+                    groups.computeIfAbsent(EditDistance.levenshtein(keys[member], keys[node]), (d) -> new ArrayList<>()).add(member);
+
+                List<Subtree> subtrees = new ArrayList<>(groups.size());
+                for (Map.Entry<Integer, List<Integer>> group : groups.entrySet()) {
+                    List<Integer> groupMembers = group.getValue();
+                    int child = groupMembers.get(0);
+
+                    parentDistance[child] = group.getKey();
+                    nextSibling[child] = firstChild[node];
+                    firstChild[node] = child;
+
+                    int[] childMembers = new int[groupMembers.size() - 1];
+                    for (int i = 1; i < groupMembers.size(); i++)
+                        childMembers[i - 1] = groupMembers.get(i);
+                    subtrees.add(new Subtree(child, childMembers));
+                }
+
+                if (members.length < PARALLEL_TREE_THRESHOLD)
+                    subtrees.forEach(Subtree::compute);
+                else
+                    invokeAll(subtrees);
+            }
+        }
+    }
+
+    /**
+     * The full-text index over the summaries and names of all entries that
+     * have a summary. Every word of an entry is posted once, together with
+     * the positions it occurs at; positions past MAX_POSITION are all stored
+     * as MAX_POSITION, so each fits in a byte.
+     */
+    private static class FullText {
+        final Map<String, List<Integer>> postings = new HashMap<>();
+        final Map<String, List<byte[]>> positions = new HashMap<>();
+        final int[] lengths;
+        int documents;
+        long totalLength;
+
+        FullText(List<Entry> entries) {
+            lengths = new int[entries.size()];
+
+            for (int entry = 0; entry < entries.size(); entry++) {
+                Entry e = entries.get(entry);
+                if (e.summary == null)
+                    continue;
+
+                List<String> words = new ArrayList<>(Words.ofName(e.member == null ? e.className : ApiIndex.memberName(e.member)));
+                words.addAll(Words.of(e.summary));
+
+                Map<String, List<Integer>> occurrences = new LinkedHashMap<>();
+                for (int i = 0; i < words.size(); i++)
+                    occurrences.computeIfAbsent(words.get(i), (str) -> new ArrayList<>()).add(Math.min(i, MAX_POSITION));
+
+                for (Map.Entry<String, List<Integer>> word : occurrences.entrySet()) {
+                    byte[] wordPositions = new byte[word.getValue().size()];
+                    for (int i = 0; i < wordPositions.length; i++)
+                        wordPositions[i] = (byte) (int) word.getValue().get(i);
+
+                    postings.computeIfAbsent(word.getKey(), (str) -> new ArrayList<>()).add(entry);
+                    positions.computeIfAbsent(word.getKey(), (str) -> new ArrayList<>()).add(wordPositions);
+                }
+
+                lengths[entry] = words.size();
+                documents++;
+                totalLength += words.size();
+            }
+        }
+
+        /**
+         * Writes the number of documents and their total length, the length
+         * of each entry's document, the start of the positions of each
+         * posting and all positions as bytes. Postings are in the order in
+         * which writeKeys writes them.
+         *
+         * @param out  the stream to write to
+         * @param keys the sorted words
+         */
+        void write(DataOutputStream out, String[] keys) throws IOException {
+            out.writeInt(documents);
+            out.writeLong(totalLength);
+            for (int length : lengths)
+                out.writeInt(length);
+
+            int positionStart = 0;
+            for (String key : keys) {
+                for (byte[] wordPositions : positions.get(key)) {
+                    out.writeInt(positionStart);
+                    positionStart += wordPositions.length;
+                }
+            }
+            out.writeInt(positionStart);
+
+            for (String key : keys)
+                for (byte[] wordPositions : positions.get(key))
+                    out.write(wordPositions);
+        }
+    }
+
+    /**
+     * A single class, method, field or source file, before its names are
+     * turned into string ids.
+     */
+    private static class Entry {
+        final String module;
+        final String pack;
+        final String className;
+        final String member;
+
+        /**
+         * The summary of the entry in the javadoc index, or null if it was
+         * not read from one.
+         */
+        String summary;
+
+        Entry(String module, String pack, String className, String member) {
+            this.module = module;
+            this.pack = pack;
+            this.className = className;
+            this.member = member;
+        }
+    }
+
+    /**
+     * The entries of one or more files, and the search terms and camel hump
+     * initials for them per table, including the signature tables. Both refer
+     * to entries by their position in the entry list.
+     */
+    private static class Terms {
+        private final List<Entry> entries = new ArrayList<>();
+        private final List<Map<String, List<Integer>>> tables = new ArrayList<>();
+        private final List<Map<String, List<Integer>>> humps = new ArrayList<>();
+
+        Terms() {
+            for (int i = 0; i < ApiIndex.KEY_TABLE_COUNT; i++)
+                tables.add(new HashMap<>());
+            for (int i = 0; i < ApiIndex.TABLE_COUNT; i++)
+                humps.add(new HashMap<>());
+        }
+
+        /**
+         * Adds an entry.
+         *
+         * @param module    the module of the entry, or null
+         * @param pack      the package of the entry
+         * @param className the class of the entry
+         * @param member    the anchor of the member, or null for a class
+         * @return the id of the new entry
+         */
+        int addEntry(String module, String pack, String className, String member) {
+            entries.add(new Entry(module, pack, className, member));
+            return entries.size() - 1;
+        }
+
+        /**
+         * Sets the summary of an entry, making it part of the full-text index.
+         *
+         * @param entry   the id of the entry
+         * @param summary the summary, without markup
+         */
+        void setSummary(int entry, String summary) {
+            entries.get(entry).summary = summary;
+        }
+
+        /**
+         * Adds a search term to the given table.
+         *
+         * @param table the table to add the term to
+         * @param term  the term to add
+         * @param entry the entry the term refers to
+         */
+        void add(int table, String term, int entry) {
+            tables.get(table).computeIfAbsent(term.toLowerCase(), (str) -> new ArrayList<>()).add(entry);
+        }
+
+        /**
+         * Adds the camel hump initials of a name to the given table.
+         *
+         * @param table the table to add the initials to
+         * @param name  the name as it is written in the API
+         * @param entry the entry the name refers to
+         */
+        void addHumps(int table, String name, int entry) {
+            humps.get(table).computeIfAbsent(CamelHumps.initials(name), (str) -> new ArrayList<>()).add(entry);
+        }
+
+        /**
+         * Appends the entries and terms of another set of terms to this one.
+         */
+        void merge(Terms other) {
+            int offset = entries.size();
+            entries.addAll(other.entries);
+
+            for (int i = 0; i < ApiIndex.KEY_TABLE_COUNT; i++)
+                merge(tables.get(i), other.tables.get(i), offset);
+            for (int i = 0; i < ApiIndex.TABLE_COUNT; i++)
+                merge(humps.get(i), other.humps.get(i), offset);
+        }
+
+        private static void merge(Map<String, List<Integer>> table, Map<String, List<Integer>> other, int offset) {
+            for (Map.Entry<String, List<Integer>> term : other.entrySet()) {
+                List<Integer> postings = table.computeIfAbsent(term.getKey(), (str) -> new ArrayList<>());
+                for (int entry : term.getValue())
+                    postings.add(entry + offset);
+            }
+        }
+    }
+
+    /**
+     * Assigns each distinct string an id in insertion order, so every name and
+     * key is only stored once in the snapshot.
+     */
+    private static class StringTable {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        void add(String s) {
+            if (!ids.containsKey(s)) {
+                ids.put(s, strings.size());
+                strings.add(s);
+            }
+        }
+
+        int id(String s) {
+            return ids.get(s);
+        }
+
+        void write(DataOutputStream out) throws Exception {
+            List<byte[]> encoded = new ArrayList<>(strings.size());
+            for (String s : strings)
+                encoded.add(s.getBytes(StandardCharsets.UTF_8));
+
+            out.writeInt(strings.size());
+            int offset = 0;
+            for (byte[] bytes : encoded) {
+                out.writeInt(offset);
+                offset += bytes.length;
+            }
+            out.writeInt(offset);
+
+            for (byte[] bytes : encoded)
+                out.write(bytes);
+        }
+    }
+}
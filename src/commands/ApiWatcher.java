@@ -0,0 +1,132 @@
+package commands;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.nio.file.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Loads the API shards on a background thread and reloads them whenever
+ * something in the apidata directory changes. Every load produces a new,
+ * immutable Snapshot which is swapped in atomically, so searches keep being
+ * served from the previous snapshot while a new one is built.
+ * <p>
+ * The watcher only holds a weak reference to the snapshot reference of its
+ * APICommand, and stops once that command is gone, e.g. after a -reload.
+ */
+class ApiWatcher extends Thread {
+    /**
+     * How long to wait for further changes before reloading, so a script
+     * replacing many files at once only causes one reload.
+     */
+    public static final long QUIET_PERIOD = 2L;
+
+    /**
+     * How often to check whether the APICommand is still in use.
+     */
+    public static final long POLL_INTERVAL = 60L;
+
+    private final File directory;
+    private final WeakReference<AtomicReference<Snapshot>> target;
+
+    /**
+     * Creates a new instance of ApiWatcher. The thread still has to be
+     * started.
+     *
+     * @param directory the apidata directory
+     * @param target    the reference to publish each new Snapshot to
+     */
+    ApiWatcher(File directory, AtomicReference<Snapshot> target) {
+        super("API watcher");
+        setDaemon(true);
+        this.directory = directory;
+        this.target = new WeakReference<>(target);
+    }
+
+    @Override
+    public void run() {
+        reload();
+
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            directory.toPath().register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+
+            while (target.get() != null) {
+                WatchKey key = watcher.poll(POLL_INTERVAL, TimeUnit.SECONDS);
+                if (key == null)
+                    continue;
+
+                boolean changed = isRelevant(key);
+                while ((key = watcher.poll(QUIET_PERIOD, TimeUnit.SECONDS)) != null)
+                    changed |= isRelevant(key);
+
+                if (changed)
+                    reload();
+            }
+        } catch (Exception e) {
+            System.err.println("Stopped watching " + directory + " for API changes:");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns whether a change is to anything but the snapshots, which are
+     * written by the reload itself.
+     */
+    private static boolean isRelevant(WatchKey key) {
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            String name = String.valueOf(event.context());
+            if (event.kind() == OVERFLOW || !name.endsWith(".idx") && !name.endsWith(".tmp"))
+                relevant = true;
+        }
+        key.reset();
+        return relevant;
+    }
+
+    /**
+     * Opens all API shards, rebuilding those whose files changed, and swaps
+     * them in. If that fails, the previous snapshot stays in use.
+     */
+    private void reload() {
+        long start = System.currentTimeMillis();
+        try {
+            List<ApiIndex> shards = ApiIndex.openAll(directory);
+            AtomicReference<Snapshot> current = target.get();
+
+            if (current != null)
+                current.set(new Snapshot(shards, System.currentTimeMillis() - start, System.currentTimeMillis()));
+        } catch (Exception e) {
+            System.err.println("Something went wrong while loading the APIs:");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * The API shards of one load, together with how long it took.
+     */
+    static class Snapshot {
+        final List<ApiIndex> shards;
+        final long buildMillis;
+        final long finishedAt;
+
+        Snapshot(List<ApiIndex> shards, long buildMillis, long finishedAt) {
+            this.shards = shards;
+            this.buildMillis = buildMillis;
+            this.finishedAt = finishedAt;
+        }
+
+        /**
+         * Describes when this snapshot was loaded, how long that took and the
+         * size of each shard.
+         */
+        String describe() {
+            return String.format("Loaded %tF %<tT in %d ms, %d entries | ", finishedAt, buildMillis, shards.stream().mapToInt(ApiIndex::entryCount).sum())
+                    + shards.stream().map(ApiIndex::describe).collect(Collectors.joining(" | "));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package commands;
+
+/**
+ * Matches IntelliJ-style camel hump abbreviations against names, so CHM
+ * finds ConcurrentHashMap and HM.cIA finds HashMap.computeIfAbsent.
+ * <p>
+ * A name is split into humps at every upper-case letter; separators such as
+ * the dot between a class and its member are humps of their own. A query
+ * matches a name when each of its humps is a case-insensitive prefix of the
+ * corresponding hump of the name. Trailing humps of the name may be left
+ * out.
+ */
+final class CamelHumps {
+
+    private CamelHumps() {
+    }
+
+    /**
+     * Returns the lower-case first letters of all humps of a name, e.g. chm
+     * for ConcurrentHashMap. Every name a query matches has initials that
+     * start with the initials of the query.
+     *
+     * @param name the name to abbreviate
+     * @return the initials of the name
+     */
+    static String initials(CharSequence name) {
+        StringBuilder initials = new StringBuilder();
+        for (int i = 0; i < name.length(); i = humpEnd(name, i))
+            initials.append(Character.toLowerCase(name.charAt(i)));
+        return initials.toString();
+    }
+
+    /**
+     * Returns whether a query should be treated as an abbreviation. It needs
+     * at least two upper-case letters; anything else is more likely a plain
+     * name, which is better served by an exact or fuzzy search.
+     *
+     * @param query the search term as it was typed
+     * @return true if query can be matched against camel humps
+     */
+    static boolean isAbbreviation(CharSequence query) {
+        int upperCase = 0;
+        for (int i = 0; i < query.length(); i++)
+            if (Character.isUpperCase(query.charAt(i)))
+                upperCase++;
+        return upperCase >= 2;
+    }
+
+    /**
+     * Returns whether a query matches a name.
+     *
+     * @param query the abbreviation as it was typed
+     * @param name  the name to match against
+     * @return true if every hump of query is a prefix of the matching hump of
+     * name
+     */
+    static boolean matches(CharSequence query, CharSequence name) {
+        int q = 0;
+        int n = 0;
+
+        while (q < query.length()) {
+            if (n >= name.length())
+                return false;
+
+            int queryEnd = humpEnd(query, q);
+            int nameEnd = humpEnd(name, n);
+            if (queryEnd - q > nameEnd - n)
+                return false;
+
+            for (int i = 0; i < queryEnd - q; i++)
+                if (Character.toLowerCase(query.charAt(q + i)) != Character.toLowerCase(name.charAt(n + i)))
+                    return false;
+
+            q = queryEnd;
+            n = nameEnd;
+        }
+        return true;
+    }
+
+    private static int humpEnd(CharSequence s, int start) {
+        if (isSeparator(s.charAt(start)))
+            return start + 1;
+
+        int end = start + 1;
+        while (end < s.length() && !Character.isUpperCase(s.charAt(end)) && !isSeparator(s.charAt(end)))
+            end++;
+        return end;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '.' || c == '_';
+    }
+}
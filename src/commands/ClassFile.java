@@ -0,0 +1,376 @@
+package commands;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A minimal class file reader. It only reads what an API index needs: the
+ * name and access flags of the class, its fields and methods with their
+ * descriptors and generic signatures and, for module-info.class, the
+ * packages the module exports. Everything else is skipped without being
+ * decoded.
+ */
+class ClassFile {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PROTECTED = 0x0004;
+    static final int ACC_BRIDGE = 0x0040;
+    static final int ACC_VARARGS = 0x0080;
+    static final int ACC_SYNTHETIC = 0x1000;
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    final int access;
+
+    /**
+     * The binary name of the class, e.g. java/util/Map$Entry.
+     */
+    final String name;
+    final List<Member> fields;
+    final List<Member> methods;
+
+    /**
+     * The packages exported to everyone, in binary form; only set for
+     * module-info.class.
+     */
+    final List<String> exports;
+
+    private ClassFile(int access, String name, List<Member> fields, List<Member> methods, List<String> exports) {
+        this.access = access;
+        this.name = name;
+        this.fields = fields;
+        this.methods = methods;
+        this.exports = exports;
+    }
+
+    /**
+     * Reads a class file.
+     *
+     * @param buffer the contents of the class file
+     * @return the ClassFile
+     * @throws IllegalArgumentException if buffer does not hold a class file
+     */
+    static ClassFile read(ByteBuffer buffer) {
+        if (buffer.getInt() != MAGIC)
+            throw new IllegalArgumentException("Not a class file");
+        buffer.getInt(); // version
+
+        ConstantPool pool = new ConstantPool(buffer);
+
+        int access = buffer.getShort() & 0xffff;
+        int thisClass = buffer.getShort() & 0xffff;
+        String name = thisClass == 0 ? "module-info" : pool.className(thisClass);
+        buffer.getShort(); // super class
+        skip(buffer, (buffer.getShort() & 0xffff) * 2);
+
+        List<Member> fields = readMembers(buffer, pool);
+        List<Member> methods = readMembers(buffer, pool);
+        List<String> exports = Collections.emptyList();
+
+        for (int i = buffer.getShort() & 0xffff; i > 0; i--) {
+            String attribute = pool.utf8(buffer.getShort() & 0xffff);
+            int length = buffer.getInt();
+            int end = buffer.position() + length;
+
+            if (attribute.equals("Module"))
+                exports = readExports(buffer, pool);
+            buffer.position(end);
+        }
+
+        return new ClassFile(access, name, fields, methods, exports);
+    }
+
+    private static List<Member> readMembers(ByteBuffer buffer, ConstantPool pool) {
+        int count = buffer.getShort() & 0xffff;
+        List<Member> members = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            int access = buffer.getShort() & 0xffff;
+            String name = pool.utf8(buffer.getShort() & 0xffff);
+            String descriptor = pool.utf8(buffer.getShort() & 0xffff);
+            String signature = null;
+
+            for (int j = buffer.getShort() & 0xffff; j > 0; j--) {
+                String attribute = pool.utf8(buffer.getShort() & 0xffff);
+                int length = buffer.getInt();
+
+                if (attribute.equals("Signature"))
+                    signature = pool.utf8(buffer.getShort(buffer.position()) & 0xffff);
+                skip(buffer, length);
+            }
+            members.add(new Member(access, name, descriptor, signature));
+        }
+        return members;
+    }
+
+    /**
+     * Reads the unqualified exports of a Module attribute.
+     */
+    private static List<String> readExports(ByteBuffer buffer, ConstantPool pool) {
+        skip(buffer, 6); // name, flags and version
+
+        int requires = buffer.getShort() & 0xffff;
+        skip(buffer, requires * 6);
+
+        List<String> exports = new ArrayList<>();
+        for (int i = buffer.getShort() & 0xffff; i > 0; i--) {
+            int pack = buffer.getShort() & 0xffff;
+            buffer.getShort(); // flags
+            int targets = buffer.getShort() & 0xffff;
+            skip(buffer, targets * 2);
+
+            if (targets == 0)
+                exports.add(pool.utf8(pool.reference(pack)));
+        }
+        return exports;
+    }
+
+    private static void skip(ByteBuffer buffer, int bytes) {
+        buffer.position(buffer.position() + bytes);
+    }
+
+    /**
+     * Returns whether a member or class is part of the documented API, which
+     * is the case for public and protected ones that are not generated by
+     * the compiler.
+     *
+     * @param access the access flags
+     * @return true if the access flags make something visible in javadoc
+     */
+    static boolean isDocumented(int access) {
+        return (access & (ACC_PUBLIC | ACC_PROTECTED)) != 0 && (access & ACC_SYNTHETIC) == 0;
+    }
+
+    /**
+     * Turns a method signature or descriptor into its parameter types as
+     * javadoc writes them in anchors: fully qualified, with type arguments
+     * removed, type variables by name and a trailing ... for varargs, e.g.
+     * (K,java.util.function.Function) for Map.computeIfAbsent.
+     *
+     * @param method the method
+     * @return the parameter list, including parentheses
+     */
+    static String parameters(Member method) {
+        String signature = signature(method);
+        StringBuilder parameters = new StringBuilder("(");
+        int i = signature.indexOf('(') + 1;
+
+        while (signature.charAt(i) != ')') {
+            if (parameters.length() > 1)
+                parameters.append(',');
+            i = appendType(signature, i, parameters);
+        }
+
+        if ((method.access & ACC_VARARGS) != 0 && parameters.toString().endsWith("[]")) {
+            parameters.setLength(parameters.length() - 2);
+            parameters.append("...");
+        }
+
+        return parameters.append(')').toString();
+    }
+
+    /**
+     * Returns the return type of a method, written like its parameters, e.g.
+     * V for Map.computeIfAbsent.
+     *
+     * @param method the method
+     * @return the return type, void for none
+     */
+    static String returnType(Member method) {
+        String signature = signature(method);
+        StringBuilder type = new StringBuilder();
+        appendType(signature, signature.indexOf(')') + 1, type);
+        return type.toString();
+    }
+
+    private static String signature(Member method) {
+        return method.signature != null ? method.signature : method.descriptor;
+    }
+
+    /**
+     * Appends a single type of a signature or descriptor.
+     *
+     * @param signature the signature
+     * @param i         the position of the type
+     * @param type      the builder to append the type to
+     * @return the position after the type
+     */
+    private static int appendType(String signature, int i, StringBuilder type) {
+        int dimensions = 0;
+        while (signature.charAt(i) == '[') {
+            dimensions++;
+            i++;
+        }
+
+        char c = signature.charAt(i);
+        if (c == 'L' || c == 'T') {
+            int depth = 0;
+            for (i++; depth > 0 || signature.charAt(i) != ';'; i++) {
+                char d = signature.charAt(i);
+                if (d == '<')
+                    depth++;
+                else if (d == '>')
+                    depth--;
+                else if (depth == 0)
+                    type.append(d == '/' || d == '$' ? '.' : d);
+            }
+        } else {
+            type.append(primitive(c));
+        }
+
+        for (int d = 0; d < dimensions; d++)
+            type.append("[]");
+        return i + 1;
+    }
+
+    private static String primitive(char c) {
+        switch (c) {
+            case 'B':
+                return "byte";
+            case 'C':
+                return "char";
+            case 'D':
+                return "double";
+            case 'F':
+                return "float";
+            case 'I':
+                return "int";
+            case 'J':
+                return "long";
+            case 'S':
+                return "short";
+            case 'Z':
+                return "boolean";
+            case 'V':
+                return "void";
+            default:
+                throw new IllegalArgumentException("Unknown type " + c);
+        }
+    }
+
+    /**
+     * A field or method.
+     */
+    static class Member {
+        final int access;
+        final String name;
+        final String descriptor;
+
+        /**
+         * The generic signature, or null if the member has none.
+         */
+        final String signature;
+
+        Member(int access, String name, String descriptor, String signature) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.signature = signature;
+        }
+    }
+
+    /**
+     * The constant pool of a class file. Only the offset of each constant is
+     * recorded; strings are decoded when they are asked for.
+     */
+    private static class ConstantPool {
+        private final ByteBuffer buffer;
+        private final int[] offsets;
+
+        ConstantPool(ByteBuffer buffer) {
+            this.buffer = buffer;
+            offsets = new int[buffer.getShort() & 0xffff];
+
+            for (int i = 1; i < offsets.length; i++) {
+                int tag = buffer.get() & 0xff;
+                offsets[i] = buffer.position();
+
+                switch (tag) {
+                    case CONSTANT_UTF8:
+                        skip(buffer, buffer.getShort() & 0xffff);
+                        break;
+                    case CONSTANT_LONG:
+                    case CONSTANT_DOUBLE:
+                        skip(buffer, 8);
+                        i++;
+                        break;
+                    case CONSTANT_METHOD_HANDLE:
+                        skip(buffer, 3);
+                        break;
+                    case CONSTANT_CLASS:
+                    case CONSTANT_STRING:
+                    case CONSTANT_METHOD_TYPE:
+                    case CONSTANT_MODULE:
+                    case CONSTANT_PACKAGE:
+                        skip(buffer, 2);
+                        break;
+                    case CONSTANT_INTEGER:
+                    case CONSTANT_FLOAT:
+                    case CONSTANT_FIELDREF:
+                    case CONSTANT_METHODREF:
+                    case CONSTANT_INTERFACE_METHODREF:
+                    case CONSTANT_NAME_AND_TYPE:
+                    case CONSTANT_DYNAMIC:
+                    case CONSTANT_INVOKE_DYNAMIC:
+                        skip(buffer, 4);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown constant pool tag " + tag);
+                }
+            }
+        }
+
+        /**
+         * Returns the index a Class, Module or Package constant refers to.
+         */
+        int reference(int index) {
+            return buffer.getShort(offsets[index]) & 0xffff;
+        }
+
+        String className(int index) {
+            return utf8(reference(index));
+        }
+
+        /**
+         * Decodes a Utf8 constant, which uses modified UTF-8.
+         */
+        String utf8(int index) {
+            int length = buffer.getShort(offsets[index]) & 0xffff;
+            int start = offsets[index] + 2;
+            StringBuilder s = new StringBuilder(length);
+
+            for (int i = start; i < start + length; i++) {
+                int b = buffer.get(i) & 0xff;
+
+                if (b < 0x80) {
+                    s.append((char) b);
+                } else if (b < 0xe0) {
+                    s.append((char) (((b & 0x1f) << 6) | (buffer.get(++i) & 0x3f)));
+                } else {
+                    int b2 = buffer.get(++i) & 0x3f;
+                    s.append((char) (((b & 0x0f) << 12) | (b2 << 6) | (buffer.get(++i) & 0x3f)));
+                }
+            }
+            return s.toString();
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package commands;
 
 import botster.AbstractPlugin;
+import botster.ReplySink;
+import botster.RequestContext;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -11,13 +13,29 @@ import java.util.concurrent.*;
 
 /**
  * The ExecCommand class can be used to execute arbitrary pieces of Java code,
- * the result of which will be output in the channel.
+ * the result of which will be output in the channel. Lines the code prints are
+ * sent to the channel while it is still running.
  * <p>
  * Credits to Honk for originally making most of this ;)
  */
 public class ExecCommand extends AbstractPlugin {
 
     private static final ExecutorService THREAD_POOL = Executors.newCachedThreadPool();
+
+    /**
+     * Runs the executions, at most EXEC_THREADS at a time. Each one takes a
+     * folder of FOLDERS for its files while it runs, so a slow execution in
+     * one channel does not hold up those in the others.
+     */
+    public static final int EXEC_THREADS = 2;
+    private static final ExecutorService EXEC_POOL = Executors.newFixedThreadPool(EXEC_THREADS);
+    private static final BlockingQueue<String> FOLDERS = new ArrayBlockingQueue<>(EXEC_THREADS);
+
+    static {
+        for (int i = 0; i < EXEC_THREADS; i++)
+            FOLDERS.add("execCommand" + File.separator + "run" + i + File.separator);
+    }
+
     public static final int MAX_LINE_LENGTH = 200;
     public static final long PROCESS_TIMEOUT = 5L;
     public static final int DEFAULT_ERRORCODE = 666;
@@ -91,50 +109,66 @@ public class ExecCommand extends AbstractPlugin {
 
     @Override
     public String getReply(String command, String message) {
-        return exec(message, command.equals("sysout"));
+        StringBuilder ret = new StringBuilder();
+        reply(null, command, message, line -> {
+            ret.append(line).append("\r\n");
+            return true;
+        }).toCompletableFuture().join();
+        return ret.toString();
     }
 
     /**
-     * Executes a piece of code and returns the result.
+     * Executes the code on EXEC_POOL, so the request thread is free while it
+     * runs, and sends its output line by line.
+     */
+    @Override
+    public CompletionStage<Void> reply(RequestContext context, String command, String message, ReplySink out) {
+        return CompletableFuture.runAsync(() -> {
+            String folder = FOLDERS.remove();
+            try {
+                exec(folder, message, command.equals("sysout"), out);
+            } finally {
+                FOLDERS.add(folder);
+            }
+        }, EXEC_POOL);
+    }
+
+    /**
+     * Executes a piece of code and sends the result.
      *
+     * @param folder       the folder to write the code to and run it in
      * @param message      the code to execute
      * @param isSysoutOnly if true, the message will be interpreted as something that
      *                     needs to be printed, rather than executed. Basically replaces
      *                     message with sysout(message);
+     * @param out          where to send the output
      */
-    private String exec(String message, boolean isSysoutOnly) {
-        StringBuilder ret = new StringBuilder();
+    private void exec(String folder, String message, boolean isSysoutOnly, ReplySink out) {
         StringWriter compilerOutput = new StringWriter();
 
-        String folder = "execCommand" + File.separator;
         String filename = "Exec.java";
         String file = folder + filename;
+        new File(folder).mkdirs();
 
         String fixedMessage = fixSemicolons(message, isSysoutOnly);
 
-        List<String> output = Collections.synchronizedList(new ArrayList<>());
+        Output output = new Output(out);
 
         try (PrintWriter writer = new PrintWriter(file)) {
             writeFile(fixedMessage, isSysoutOnly, writer);
             int exitCode = compileAndRun(compilerOutput, folder, file, output);
 
-            for (int i = 0; i < Math.min(MAX_LINES, output.size()); i++) {
-                String curStr = output.get(i);
-                ret.append(curStr.substring(0, Math.min(MAX_LINE_LENGTH, curStr.length())));
-                ret.append("\r\n");
-            }
-
-            if (output.size() == 0)
-                ret.append(String.format("Execution successful. No output. Exit code: %d", exitCode));
+            if (output.isEmpty())
+                output.add(String.format("Execution successful. No output. Exit code: %d", exitCode));
 
         } catch (FileNotFoundException e) {
             e.printStackTrace();
+        } finally {
+            output.close();
         }
-
-        return ret.toString();
     }
 
-    private int compileAndRun(StringWriter compilerOutput, String folder, String file, List<String> output) {
+    private int compileAndRun(StringWriter compilerOutput, String folder, String file, Output output) {
         int exitCode = DEFAULT_ERRORCODE;
         int error = com.sun.tools.javac.Main.compile(new String[]{file}, new PrintWriter(compilerOutput));
         if (error != 0)
@@ -169,9 +203,9 @@ public class ExecCommand extends AbstractPlugin {
         }
     }
 
-    private int runCode(String folder, List<String> output) {
+    private int runCode(String folder, Output output) {
         int returnCode = DEFAULT_ERRORCODE;
-        IntegerCallable intCall = new IntegerCallable(output);
+        IntegerCallable intCall = new IntegerCallable(folder, output);
 
         try {
             returnCode = timedCall(intCall);
@@ -179,7 +213,7 @@ public class ExecCommand extends AbstractPlugin {
             // Handle timeout here
             output.add("Execution timed out");
             if (intCall.getProcess() != null)
-                intCall.getProcess().destroy();
+                intCall.getProcess().destroyForcibly();
         } catch (InterruptedException | ExecutionException e) {
             e.printStackTrace();
             output.add("Error executing: " + e.toString());
@@ -197,27 +231,76 @@ public class ExecCommand extends AbstractPlugin {
                     System.out.println("Could not delete file: " + f.getAbsolutePath());
     }
 
-    private void handleCompileError(StringWriter compilerOutput, List<String> output) {
+    private void handleCompileError(StringWriter compilerOutput, Output output) {
         String[] compOut = compilerOutput.toString().split("[\r\n]+");
-        Collections.addAll(output, compOut);
+        for (String line : compOut)
+            output.add(line);
+    }
+
+    /**
+     * Sends the first MAX_LINES lines of the output of an execution, cut off
+     * at MAX_LINE_LENGTH characters. Lines added once the execution is over,
+     * e.g. by a process that was told to stop, are ignored.
+     * <p>
+     * Once no more lines will be sent, because there were MAX_LINES already or
+     * the reply was cut short, the execution is stopped.
+     */
+    private static class Output {
+        private final ReplySink out;
+        private int lines;
+        private boolean closed;
+
+        public Output(ReplySink out) {
+            this.out = out;
+        }
+
+        /**
+         * Sends a line, if it is still wanted.
+         *
+         * @return false if no more lines will be sent
+         */
+        public synchronized boolean add(String line) {
+            if (closed || lines >= MAX_LINES)
+                return false;
+
+            lines++;
+            if (!out.send(line.substring(0, Math.min(MAX_LINE_LENGTH, line.length()))))
+                closed = true;
+            return !closed && lines < MAX_LINES;
+        }
+
+        public synchronized boolean isEmpty() {
+            return lines == 0;
+        }
+
+        public synchronized void close() {
+            closed = true;
+        }
     }
 
     private static class IntegerCallable implements Callable<Integer> {
-        private final List<String> output;
-        private Process process;
+        private final String folder;
+        private final Output output;
+        private volatile Process process;
 
-        public IntegerCallable(List<String> out) {
+        public IntegerCallable(String folder, Output out) {
+            this.folder = folder;
             this.output = out;
         }
 
         public Integer call() throws Exception {
-            ProcessBuilder pb = new ProcessBuilder("java", "-cp", "execCommand/", "-Djava.security.manager", "-Djava.security.policy=execCommand/exec.policy", "-Xmx64M", "Exec");
+            ProcessBuilder pb = new ProcessBuilder("java", "-cp", folder, "-Djava.security.manager", "-Djava.security.policy=execCommand/exec.policy", "-Xmx64M", "Exec");
             pb.redirectErrorStream(true);
             process = pb.start();
 
             try (final Scanner scan = new Scanner(process.getInputStream())) {
-                while (scan.hasNext())
-                    output.add(scan.nextLine());
+                while (scan.hasNextLine()) {
+                    if (!output.add(scan.nextLine())) {
+                        // nothing more will be shown, so there is no point in running on
+                        process.destroyForcibly();
+                        break;
+                    }
+                }
             }
             return 1;
         }
@@ -21,38 +21,81 @@ package commands;
 import sun.misc.Unsafe;
 
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 /**
- * Saves information about a factoid
+ * Saves information about a factoid. Factoids are changed by one request at a
+ * time, but read by the requests of all channels at once; the names are kept
+ * in a copy-on-write set and the other fields are volatile, so readers always
+ * see a complete set of names and the latest text.
  */
 class Factoid {
+    /**
+     * Where the factoid can be used, see Factoids.GLOBAL and
+     * Factoids.networkScope() and channelScope().
+     */
+    private final String scope;
     private final Set<String> names;
-    private String hostMask;
-    private String text;
+    private volatile String hostMask;
+    private volatile String text;
+
+    /**
+     * The registry this factoid is part of, which indexes its names.
+     */
+    private Factoids owner;
 
     Factoid(String[] names, String hostMask, String text) {
+        this(Factoids.GLOBAL, names, hostMask, text);
+    }
 
-        this.names = new HashSet<>(Arrays.asList(names));
+    Factoid(String scope, String[] names, String hostMask, String text) {
+        this.scope = scope;
+        this.names = new CopyOnWriteArraySet<>(Arrays.asList(names));
         this.hostMask = hostMask;
         this.text = text;
     }
 
+    String getScope() {
+        return this.scope;
+    }
+
+    void setOwner(Factoids owner) {
+        this.owner = owner;
+    }
+
     public void addName(String s) {
-        this.names.add(s);
+        if (this.names.add(s) && this.owner != null)
+            this.owner.nameAdded(this, s);
     }
 
-    public void removeName(String s) {
-        this.names.remove(s);
+    /**
+     * Removes a name, in any case.
+     *
+     * @return the name as it was removed, or null if there was no such name
+     */
+    public String removeName(String s) {
+        for (String name : this.names) {
+            if (name.equalsIgnoreCase(s)) {
+                this.names.remove(name);
+                if (this.owner != null)
+                    this.owner.nameRemoved(this, name);
+                return name;
+            }
+        }
+        return null;
     }
 
     public Set<String> getNames() {
-        return this.names;
+        return Collections.unmodifiableSet(this.names);
     }
 
     public boolean hasName(String s) {
-        return this.names.stream().anyMatch(x -> x.equalsIgnoreCase(s));
+        for (String name : this.names)
+            if (name.equalsIgnoreCase(s))
+                return true;
+        return false;
     }
 
     public String getHostMask() {
@@ -68,7 +111,10 @@ class Factoid {
     }
 
     public void setText(String text) {
+        String oldText = this.text;
         this.text = text;
+        if (this.owner != null)
+            this.owner.textChanged(this, oldText);
     }
 
     public String toString() {
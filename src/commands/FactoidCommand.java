@@ -4,14 +4,24 @@ import botster.AbstractPlugin;
 import botster.Botster;
 
 import java.io.File;
-import java.io.PrintWriter;
+import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
 /**
  * The FactoidCommand provides a number of responses to answer questions asked
- * often. Factoids are read from factoids.txt, where each factoid consists of
- * two lines, the name of the factoid and the response.
+ * often. A factoid is either global, or only used on one network or in one
+ * channel, where it takes precedence over a factoid of the same name with a
+ * wider scope. -addfactoid, -updatefactoid and -removefactoid take the scope
+ * as an optional first word: @channel, @network or @global.
+ * <p>
+ * Factoids are read from factoids.txt, where each factoid consists of three
+ * lines: its names, the host mask of whoever last changed it and the
+ * response. Changes are recorded in a FactoidJournal next to it.
+ * <p>
+ * Starting the bot with -Dfactoids.store=mapped keeps the factoids in the
+ * binary log factoids.db instead, see MappedFactoidStore. The first time, the
+ * factoids are copied over from factoids.txt.
  */
 public class FactoidCommand extends AbstractPlugin {
     private static final String UPDATE_FACTOID = "updatefactoid";
@@ -22,13 +32,26 @@ public class FactoidCommand extends AbstractPlugin {
     private static final String UNALIAS_FACTOID = "unalias";
     private static final String ALIASES_FACTOID = "aliases";
     private static final String FACTOID_COMMAND = "factoid";
+    private static final String FACTOID_SEARCH = "factoidsearch";
     private static final String FACTOIDS_TXT = "factoids.txt";
+    private static final String FACTOIDS_DB = "factoids.db";
+    private static final String STORE_PROPERTY = "factoids.store";
+    private static final String MAPPED_STORE = "mapped";
+    private static final String CHANNEL_SCOPE = "@channel";
+    private static final String NETWORK_SCOPE = "@network";
+    private static final String GLOBAL_SCOPE = "@global";
+    public static final int SEARCH_RESULTS_PER_PAGE = 15;
 
     /**
-     * The factoids available for this FactoidCommand. Keys are factoid names,
-     * values are the actual responses.
+     * The factoids available for this FactoidCommand, indexed by all of their
+     * names.
      */
-    private static Set<Factoid> factoids;
+    private static Factoids factoids;
+
+    /**
+     * The store all changes to the factoids are recorded in.
+     */
+    private static FactoidStore store;
 
     /**
      * Creates a new instance of FactoidCommand. Registering of the factoids is
@@ -43,30 +66,55 @@ public class FactoidCommand extends AbstractPlugin {
         addCommand(ALIAS_FACTOID);
         addCommand(UNALIAS_FACTOID);
         addCommand(ALIASES_FACTOID);
+        addCommand(FACTOID_SEARCH);
         addRestrictedCommand(FACTOID_HOST);
     }
 
     /**
-     * Loads the factoids from factoids.txt, where each factoid consists of two
-     * lines, the name of the factoid and the response.
+     * Loads the factoids from their store the first time a FactoidCommand is
+     * created, and registers all of their names. The bot
+     * creates a new FactoidCommand whenever commands are reloaded; those reuse
+     * the factoids already in memory.
      */
     private void loadFactoids() {
-        try (final Scanner scan = new Scanner(new File(FACTOIDS_TXT))) {
-            factoids = new HashSet<>();
-            while (scan.hasNext()) {
-                String[] factoidNames = scan.nextLine().split(" ");
-                String factoidHostMask = scan.nextLine();
-                String factoidText = scan.nextLine();
-                Factoid f = new Factoid(factoidNames, factoidHostMask, factoidText);
-
-                for (String factoidName : factoidNames)
-                    addCommand(factoidName);
-
-                factoids.add(f);
+        synchronized (FactoidCommand.class) {
+            if (factoids == null) {
+                factoids = new Factoids();
+                try {
+                    store = openStore(factoids);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
+
+        for (Factoid f : factoids)
+            for (String factoidName : f.getNames())
+                addCommand(factoidName);
+    }
+
+    /**
+     * Opens the store selected with the factoids.store system property and
+     * loads the factoids from it.
+     */
+    private static FactoidStore openStore(Factoids factoids) throws IOException {
+        FactoidJournal text = new FactoidJournal(new File(FACTOIDS_TXT));
+        if (!MAPPED_STORE.equals(System.getProperty(STORE_PROPERTY))) {
+            text.load(factoids);
+            return text;
+        }
+
+        MappedFactoidStore mapped = new MappedFactoidStore(new File(FACTOIDS_DB));
+        if (mapped.exists()) {
+            mapped.load(factoids);
+            return mapped;
+        }
+
+        text.load(factoids);
+        text.close();
+        mapped.load(new Factoids());
+        mapped.addAll(factoids);
+        return mapped;
     }
 
     @Override
@@ -76,26 +124,39 @@ public class FactoidCommand extends AbstractPlugin {
                 return handleFactoidCommand(message);
             }
             case ADD_FACTOID: {
-                return handleAddFactoid(message);
+                synchronized (factoids) {
+                    return handleAddFactoid(message);
+                }
             }
             case REMOVE_FACTOID: {
-                return handleRemoveFactoid(message);
+                synchronized (factoids) {
+                    return handleRemoveFactoid(message);
+                }
             }
             case UPDATE_FACTOID: {
-                return handleUpdateFactoid(message);
+                synchronized (factoids) {
+                    return handleUpdateFactoid(message);
+                }
             }
             case FACTOID_HOST: {
                 handleFactoidHost(message);
             }
             case ALIAS_FACTOID: {
-                return handleAliasFactoid(message);
+                synchronized (factoids) {
+                    return handleAliasFactoid(message);
+                }
             }
             case UNALIAS_FACTOID: {
-                return handleUnaliasFactoid(message);
+                synchronized (factoids) {
+                    return handleUnaliasFactoid(message);
+                }
             }
             case ALIASES_FACTOID: {
                 return handleAliasesFactoid(message);
             }
+            case FACTOID_SEARCH: {
+                return handleFactoidSearch(message);
+            }
             default: {
                 return handleFactoid(command, message);
             }
@@ -103,26 +164,95 @@ public class FactoidCommand extends AbstractPlugin {
     }
 
     /**
-     * Updates factoids.txt
+     * A change to the factoids, to be recorded in the store.
      */
-    private void saveFactoids() {
-        try (final PrintWriter pw = new PrintWriter(new File("factoids.txt"))) {
-            for (Factoid f : factoids) {
-                pw.println(f.getNames().stream().collect(Collectors.joining(" ")));
-                pw.println(f.getHostMask());
-                pw.println(f.getText());
-            }
-            getBot().reloadCommands();
-        } catch (Exception e) {
+    private interface Change {
+        void saveTo(FactoidStore store) throws IOException;
+    }
+
+    /**
+     * Records a change to the factoids in the store.
+     */
+    private void saveFactoids(Change change) {
+        try {
+            if (store != null)
+                change.saveTo(store);
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Finds the factoid a name stands for in the channel of the current request.
+     */
     private Factoid findFactoid(String name) {
-        for (Factoid f : factoids)
-            if (f.hasName(name))
-                return f;
-        return null;
+        return factoids.resolve(name, getScopes(getChannel()));
+    }
+
+    /**
+     * Returns the scopes of a channel, most specific first.
+     */
+    private String[] getScopes(String channel) {
+        String network = getBot().getNetwork();
+        return new String[]{Factoids.channelScope(network, channel), Factoids.networkScope(network), Factoids.GLOBAL};
+    }
+
+    /**
+     * Returns false for the name of a factoid that is only used in other
+     * channels or on other networks, so it is not suggested.
+     */
+    @Override
+    public boolean isAvailable(String command, String channel) {
+        return !factoids.hasName(command) || factoids.resolve(command, getScopes(channel)) != null;
+    }
+
+    /**
+     * Returns the scope named by the first word of a message, e.g. @channel,
+     * or null if the message does not start with a scope.
+     */
+    private String parseScope(String message) {
+        String network = getBot().getNetwork();
+        switch (message.split("\\s+", 2)[0]) {
+            case CHANNEL_SCOPE:
+                return Factoids.channelScope(network, getChannel());
+            case NETWORK_SCOPE:
+                return Factoids.networkScope(network);
+            case GLOBAL_SCOPE:
+                return Factoids.GLOBAL;
+            default:
+                return null;
+        }
+    }
+
+    private static String skipScope(String message) {
+        int space = message.indexOf(' ');
+        return space == -1 ? "" : message.substring(space + 1).trim();
+    }
+
+    /**
+     * Returns whether a name is taken by a command other than a factoid.
+     */
+    private boolean isOtherCommand(String name) {
+        return getBot().hasCommand(name) && !factoids.hasName(name);
+    }
+
+    /**
+     * Unregisters the command of a name no factoid in any scope has anymore.
+     */
+    private void removeFactoidCommand(String name) {
+        if (!factoids.hasName(name))
+            removeCommand(name);
+    }
+
+    /**
+     * Returns whether a factoid is the one one of its names stands for in the
+     * channel of the current request.
+     */
+    private boolean isVisible(Factoid f) {
+        for (String name : f.getNames())
+            if (findFactoid(name) == f)
+                return true;
+        return false;
     }
 
     private String handleFactoid(String command, String message) {
@@ -147,7 +277,11 @@ public class FactoidCommand extends AbstractPlugin {
         if (!getChannel().startsWith("#"))
             return getNickName() + ", this command only works in channels.";
 
-        Factoid f = findFactoid(message);
+        String scope = parseScope(message);
+        if (scope != null)
+            message = skipScope(message);
+
+        Factoid f = scope != null ? factoids.find(scope, message) : findFactoid(message);
         if (f == null)
             return getNickName() + ", that factoid does not exist.";
 
@@ -155,7 +289,9 @@ public class FactoidCommand extends AbstractPlugin {
             return String.format("For safety reasons, you are not allowed to remove factoids that have aliases. Please remove the aliases first if you wish to remove this factoid. All known aliases: %s", f.getNames().stream().collect(Collectors.joining(", ")));
 
         factoids.remove(f);
-        saveFactoids();
+        for (String factoidName : f.getNames())
+            removeFactoidCommand(factoidName);
+        saveFactoids(s -> s.removed(f));
         return String.format("The %s%s factoid has been removed.", Botster.PREFIX, message);
     }
 
@@ -168,8 +304,9 @@ public class FactoidCommand extends AbstractPlugin {
         if (factoidNames.size() <= 1)
             return String.format("You cannot remove the last known alias for a factoid. If you really want to remove this factoid, use %s%s instead.", Botster.PREFIX, REMOVE_FACTOID);
 
-        unaliasFactoid.removeName(message);
-        saveFactoids();
+        String alias = unaliasFactoid.removeName(message);
+        removeFactoidCommand(alias);
+        saveFactoids(s -> s.unaliased(unaliasFactoid, alias));
         return "Alias removed. All commands for this factoid: " + factoidNames.stream().collect(Collectors.joining(", "));
     }
 
@@ -180,22 +317,21 @@ public class FactoidCommand extends AbstractPlugin {
             return "Please supply a current factoid and a new alias.";
 
         Factoid currentFactoid = findFactoid(factoidNames[0]);
-        Factoid newFactoidAlias = findFactoid(factoidNames[1]);
-
         if (currentFactoid == null)
             return String.format("Factoid '%s' was not found.", factoidNames[0]);
 
-        if (newFactoidAlias != null)
+        if (factoids.find(currentFactoid.getScope(), factoidNames[1]) != null)
             return String.format("A factoid called '%s' already exists.", factoidNames[1]);
 
-        if (getBot().getPublicCommands().contains(factoidNames[1]) || getBot().getRestrictedCommands().contains(factoidNames[1]))
+        if (isOtherCommand(factoidNames[1]))
             return String.format("A command called '%s' already exists.", factoidNames[1]);
 
         if (currentFactoid.hasName(factoidNames[1]))
             return String.format("The factoid '%s' already has the alias '%s'.", factoidNames[0], factoidNames[1]);
 
         currentFactoid.addName(factoidNames[1]);
-        saveFactoids();
+        addCommand(factoidNames[1]);
+        saveFactoids(s -> s.aliased(currentFactoid, factoidNames[1]));
         return "Alias added. All commands for this factoid: " + currentFactoid.getNames().stream().collect(Collectors.joining(", "));
     }
 
@@ -203,19 +339,23 @@ public class FactoidCommand extends AbstractPlugin {
         if (!getChannel().startsWith("#"))
             return getNickName() + ", this command only works in channels.";
 
+        String scope = parseScope(message);
+        if (scope != null)
+            message = skipScope(message);
+
         if (!message.contains(" "))
             return getNickName() + ", you did not supply a factoid text.";
 
         String factoidName = message.substring(0, message.indexOf(" "));
         String factoidText = message.substring(message.indexOf(" ") + 1);
-        Factoid updateFactoid = findFactoid(factoidName);
+        Factoid updateFactoid = scope != null ? factoids.find(scope, factoidName) : findFactoid(factoidName);
 
         if (updateFactoid == null)
             return getNickName() + ", a factoid with that name does not exist; use " + Botster.PREFIX + ADD_FACTOID + " to create this factoid.";
 
         updateFactoid.setHostMask(String.format("%s!%s@%s", getNickName(), getLogin(), getHostName()));
         updateFactoid.setText(factoidText);
-        saveFactoids();
+        saveFactoids(s -> s.updated(updateFactoid));
         return String.format("%s%s is now: %s", Botster.PREFIX, factoidName, factoidText);
     }
 
@@ -233,32 +373,78 @@ public class FactoidCommand extends AbstractPlugin {
         if (!getChannel().startsWith("#"))
             return getNickName() + ", this command only works in channels.";
 
+        String scope = parseScope(message);
+        if (scope != null)
+            message = skipScope(message);
+        else
+            scope = Factoids.GLOBAL;
+
         if (!message.contains(" "))
             return getNickName() + ", you did not supply a factoid text.";
 
         String factoidName = message.substring(0, message.indexOf(" "));
         String factoidText = message.substring(message.indexOf(" ") + 1);
 
-        if (getBot().getPublicCommands().contains(factoidName) || getBot().getRestrictedCommands().contains(factoidName))
+        if (isOtherCommand(factoidName))
             return getNickName() + ", there is already a command with that name.";
 
-        if (findFactoid(factoidName) != null)
+        if (factoids.find(scope, factoidName) != null)
             return getNickName() + ", a factoid with that name already exists; use " + Botster.PREFIX + UPDATE_FACTOID + " to update this factoid.";
 
         String factoidHostMask = String.format("%s!%s@%s", getNickName(), getLogin(), getHostName());
-        Factoid newFactoid = new Factoid(new String[]{factoidName}, factoidHostMask, factoidText);
+        Factoid newFactoid = new Factoid(scope, new String[]{factoidName}, factoidHostMask, factoidText);
         factoids.add(newFactoid);
         addCommand(factoidName);
-        saveFactoids();
-        getBot().reloadCommands();
+        saveFactoids(s -> s.added(newFactoid));
         return String.format("%s%s is now: %s", Botster.PREFIX, factoidName, factoidText);
     }
 
+    /**
+     * Lists the factoids whose names or texts contain the given words, best
+     * matches first. A number after the words selects a page of results.
+     */
+    private String handleFactoidSearch(String message) {
+        String query = message.trim();
+        int page = 1;
+
+        int space = query.lastIndexOf(' ');
+        if (space != -1 && query.substring(space + 1).matches("\\d{1,9}")) {
+            page = Integer.parseInt(query.substring(space + 1));
+            query = query.substring(0, space).trim();
+        }
+
+        if (query.isEmpty())
+            return getNickName() + ", please supply the words to search for.";
+
+        List<Factoid> results = factoids.search(query);
+        results.removeIf(f -> !isVisible(f));
+        if (results.isEmpty())
+            return String.format("No factoids found for '%s'.", query);
+
+        int totalPages = (results.size() - 1) / SEARCH_RESULTS_PER_PAGE + 1;
+        page = Math.max(1, Math.min(page, totalPages));
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("Factoids matching '").append(query).append("'");
+        if (totalPages > 1)
+            sb.append(", page ").append(page).append("/").append(totalPages);
+        sb.append(": ");
+
+        for (Factoid f : results.subList((page - 1) * SEARCH_RESULTS_PER_PAGE, Math.min(page * SEARCH_RESULTS_PER_PAGE, results.size())))
+            sb.append(Botster.PREFIX).append(FactoidIndex.firstName(f)).append(", ");
+        sb.setLength(sb.length() - 2);
+
+        return sb.toString();
+    }
+
     private String handleFactoidCommand(String message) {
         Factoid replyFactoid = findFactoid(message);
         if (replyFactoid != null)
             return message + " is: " + replyFactoid;
-        else
-            return getNickName() + ", that factoid was not found.";
+
+        String suggestion = getBot().suggestCommand(getChannel(), message, name -> findFactoid(name) != null);
+        if (suggestion != null)
+            return String.format("%s, that factoid was not found. Did you mean %s%s?", getNickName(), Botster.PREFIX, suggestion);
+        return getNickName() + ", that factoid was not found.";
     }
 }
\ No newline at end of file
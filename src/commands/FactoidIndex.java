@@ -0,0 +1,125 @@
+package commands;
+
+import java.util.*;
+
+/**
+ * An inverted index of the words in the names and texts of factoids, for
+ * finding factoids without knowing their name. For every word it keeps how
+ * often each factoid contains it; words are added and removed as factoids
+ * change, so the index never has to be rebuilt. Words of a name count
+ * NAME_WEIGHT times, so a factoid named after a word ranks above one that
+ * merely mentions it. Camel-case words count both as a whole and as their
+ * humps, so hashCode is found by hashcode as well as by code.
+ */
+class FactoidIndex {
+    public static final int NAME_WEIGHT = 3;
+
+    private final Map<String, Map<Factoid, Integer>> postings = new HashMap<>();
+
+    /**
+     * Adds the words of a factoid's name.
+     */
+    void addName(Factoid factoid, String name) {
+        add(factoid, words(name), NAME_WEIGHT);
+    }
+
+    /**
+     * Removes the words of a name the factoid no longer has.
+     */
+    void removeName(Factoid factoid, String name) {
+        add(factoid, words(name), -NAME_WEIGHT);
+    }
+
+    /**
+     * Adds the words of a factoid's text.
+     */
+    void addText(Factoid factoid, String text) {
+        add(factoid, words(text), 1);
+    }
+
+    /**
+     * Removes the words of a text the factoid no longer has.
+     */
+    void removeText(Factoid factoid, String text) {
+        add(factoid, words(text), -1);
+    }
+
+    /**
+     * Returns the words of a text followed by the humps of its camel-case
+     * words that are not words of their own.
+     */
+    private static List<String> words(String text) {
+        List<String> words = Words.of(text);
+        Map<String, Integer> counts = new HashMap<>();
+        for (String word : words)
+            counts.merge(word, 1, Integer::sum);
+
+        for (String hump : Words.ofName(text)) {
+            if (counts.getOrDefault(hump, 0) > 0)
+                counts.merge(hump, -1, Integer::sum);
+            else
+                words.add(hump);
+        }
+        return words;
+    }
+
+    private void add(Factoid factoid, List<String> words, int count) {
+        for (String word : words) {
+            Map<Factoid, Integer> frequencies = postings.computeIfAbsent(word, (w) -> new HashMap<>(4));
+            int frequency = frequencies.getOrDefault(factoid, 0) + count;
+
+            if (frequency > 0) {
+                frequencies.put(factoid, frequency);
+            } else {
+                frequencies.remove(factoid);
+                if (frequencies.isEmpty())
+                    postings.remove(word);
+            }
+        }
+    }
+
+    /**
+     * Finds the factoids containing the words of a query. Factoids that
+     * contain more of the words come first, then those that contain them more
+     * often.
+     *
+     * @param query the words to look for
+     * @return the matching factoids, best first
+     */
+    List<Factoid> search(String query) {
+        Map<Factoid, long[]> scores = new HashMap<>();
+
+        for (String word : new LinkedHashSet<>(Words.of(query))) {
+            Map<Factoid, Integer> frequencies = postings.get(word);
+            if (frequencies == null)
+                continue;
+
+            for (Map.Entry<Factoid, Integer> posting : frequencies.entrySet()) {
+                long[] score = scores.computeIfAbsent(posting.getKey(), (factoid) -> new long[2]);
+                score[0]++;
+                score[1] += posting.getValue();
+            }
+        }
+
+        List<Factoid> results = new ArrayList<>(scores.keySet());
+        results.sort(Comparator.<Factoid>comparingLong((factoid) -> -scores.get(factoid)[0])
+                .thenComparingLong((factoid) -> -scores.get(factoid)[1])
+                .thenComparing(FactoidIndex::firstName, String.CASE_INSENSITIVE_ORDER));
+        return results;
+    }
+
+    /**
+     * Returns the alphabetically first name of a factoid, the one search
+     * results are listed by.
+     */
+    static String firstName(Factoid factoid) {
+        return Collections.min(factoid.getNames(), String.CASE_INSENSITIVE_ORDER);
+    }
+
+    /**
+     * Returns the number of distinct words in the index.
+     */
+    int size() {
+        return postings.size();
+    }
+}
@@ -0,0 +1,327 @@
+package commands;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores the factoids as a text snapshot, factoids.txt, plus a journal of every
+ * change made since the snapshot was written. In the snapshot, the names of a
+ * factoid that is not global are preceded by its scope and a tab. A change is
+ * appended to the journal as a single line and synced to disk, so saving it
+ * takes the same time no matter how many factoids there are. On startup the
+ * snapshot is read and the journal replayed on top of it.
+ * <p>
+ * A background thread compacts the journal into a new snapshot every
+ * COMPACT_INTERVAL minutes, or as soon as it holds MAX_RECORDS changes. The
+ * journal is first moved aside and a new one started, so changes can go on
+ * while the snapshot is written; the snapshot is written to a temporary file
+ * and moved in place atomically, and only then is the old journal deleted.
+ * Replaying a change that is already part of the snapshot has no effect, so a
+ * crash at any point loses nothing that was journaled.
+ */
+class FactoidJournal implements FactoidStore {
+    private static final String ADD = "add";
+    private static final String UPDATE = "update";
+    private static final String ALIAS = "alias";
+    private static final String UNALIAS = "unalias";
+    private static final String REMOVE = "remove";
+
+    public static final long COMPACT_INTERVAL = 10L;
+    public static final int MAX_RECORDS = 1000;
+
+    private final File snapshot;
+    private final File journal;
+    private final File rotated;
+    private final ScheduledExecutorService compactor;
+    private volatile Factoids factoids;
+    private FileOutputStream out;
+    private int records;
+    private boolean compactQueued;
+
+    /**
+     * Creates a FactoidJournal for a snapshot file and the journal next to it.
+     *
+     * @param snapshot the snapshot file, e.g. factoids.txt
+     */
+    FactoidJournal(File snapshot) {
+        this.snapshot = snapshot;
+        this.journal = new File(snapshot.getPath() + ".journal");
+        this.rotated = new File(snapshot.getPath() + ".journal.old");
+        this.compactor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "Factoid compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Reads the snapshot and replays the journal, and starts journaling
+     * further changes.
+     */
+    @Override
+    public void load(Factoids factoids) throws IOException {
+        this.factoids = factoids;
+
+        if (snapshot.isFile()) {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(snapshot), StandardCharsets.UTF_8))) {
+                String names;
+                while ((names = in.readLine()) != null) {
+                    String hostMask = in.readLine();
+                    String text = in.readLine();
+                    if (text == null)
+                        break;
+                    int tab = names.indexOf('\t');
+                    String scope = tab == -1 ? Factoids.GLOBAL : names.substring(0, tab);
+                    factoids.add(new Factoid(scope, names.substring(tab + 1).split(" "), hostMask, text));
+                }
+            }
+        }
+
+        replay(rotated);
+        replay(journal);
+
+        out = new FileOutputStream(journal, true);
+        compactor.scheduleWithFixedDelay(this::compact, COMPACT_INTERVAL, COMPACT_INTERVAL, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public void added(Factoid factoid) throws IOException {
+        append(ADD, String.join(" ", factoid.getNames()), factoid.getHostMask(), factoid.getText(), factoid.getScope());
+    }
+
+    @Override
+    public void updated(Factoid factoid) throws IOException {
+        append(UPDATE, factoid.getNames().iterator().next(), factoid.getHostMask(), factoid.getText(), factoid.getScope());
+    }
+
+    @Override
+    public void aliased(Factoid factoid, String alias) throws IOException {
+        for (String name : factoid.getNames()) {
+            if (!name.equals(alias)) {
+                append(ALIAS, name, alias, factoid.getScope());
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void unaliased(Factoid factoid, String alias) throws IOException {
+        append(UNALIAS, alias, factoid.getScope());
+    }
+
+    @Override
+    public void removed(Factoid factoid) throws IOException {
+        append(REMOVE, factoid.getNames().iterator().next(), factoid.getScope());
+    }
+
+    /**
+     * Applies the changes in a journal file. A last line without a line break
+     * was cut off by a crash and is ignored.
+     */
+    private void replay(File file) throws IOException {
+        if (!file.isFile())
+            return;
+
+        String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        int start = 0;
+        for (int end = content.indexOf('\n'); end != -1; start = end + 1, end = content.indexOf('\n', start)) {
+            apply(content.substring(start, end).split("\t", -1));
+            records++;
+        }
+    }
+
+    /**
+     * Applies a single change. Changes that no longer apply, e.g. adding a
+     * factoid that already exists, are skipped. The scope of the factoid is
+     * the last field; journals written before there were scopes leave it out.
+     */
+    private void apply(String[] record) {
+        for (int i = 0; i < record.length; i++)
+            record[i] = unescape(record[i]);
+
+        int fields = fields(record[0]);
+        if (fields == -1 || record.length != fields && record.length != fields + 1) {
+            System.err.println("Skipping invalid factoid journal record " + record[0]);
+            return;
+        }
+
+        String scope = record.length > fields ? record[fields] : Factoids.GLOBAL;
+        Factoid factoid = factoids.find(scope, record[1]);
+        switch (record[0]) {
+            case ADD:
+                if (factoid == null)
+                    factoids.add(new Factoid(scope, record[1].split(" "), record[2], record[3]));
+                break;
+            case UPDATE:
+                if (factoid != null) {
+                    factoid.setHostMask(record[2]);
+                    factoid.setText(record[3]);
+                }
+                break;
+            case ALIAS:
+                if (factoid != null && factoids.find(scope, record[2]) == null)
+                    factoid.addName(record[2]);
+                break;
+            case UNALIAS:
+                if (factoid != null && factoid.getNames().size() > 1)
+                    factoid.removeName(record[1]);
+                break;
+            case REMOVE:
+                if (factoid != null)
+                    factoids.remove(factoid);
+                break;
+        }
+    }
+
+    /**
+     * Returns the number of fields of a type of change, not counting the
+     * scope, or -1 for an unknown type.
+     */
+    private static int fields(String type) {
+        switch (type) {
+            case ADD:
+            case UPDATE:
+                return 4;
+            case ALIAS:
+                return 3;
+            case UNALIAS:
+            case REMOVE:
+                return 2;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Appends a change to the journal and syncs it to disk.
+     *
+     * @param record the type of change, e.g. ADD, followed by its fields
+     */
+    private synchronized void append(String... record) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (String field : record) {
+            if (line.length() > 0)
+                line.append('\t');
+            line.append(escape(field));
+        }
+
+        out.write(line.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+        out.getChannel().force(false);
+
+        // replaying the journal counts records too, so the count may already
+        // be past MAX_RECORDS; queue a compaction only once until it has run
+        if (++records >= MAX_RECORDS && !compactQueued) {
+            compactQueued = true;
+            compactor.execute(this::compact);
+        }
+    }
+
+    /**
+     * Writes all factoids to a new snapshot and discards the changes it
+     * includes. Errors are reported and leave the journal in place.
+     */
+    void compact() {
+        List<String> lines = new ArrayList<>();
+        if (factoids == null)
+            return;
+
+        try {
+            // factoids are only changed while holding the monitor of the
+            // registry, which also records the change here; holding it keeps
+            // them from changing between taking the snapshot and moving the
+            // journal aside
+            synchronized (factoids) {
+                synchronized (this) {
+                    compactQueued = false;
+                    if (out == null || records == 0 && !rotated.exists())
+                        return;
+
+                    for (Factoid factoid : factoids) {
+                        String names = String.join(" ", factoid.getNames());
+                        lines.add(factoid.getScope().equals(Factoids.GLOBAL) ? names : factoid.getScope() + "\t" + names);
+                        lines.add(factoid.getHostMask());
+                        lines.add(factoid.getText());
+                    }
+
+                    out.close();
+                    if (rotated.exists()) {
+                        // an earlier compaction failed; its changes are still needed until the snapshot is written
+                        Files.write(rotated.toPath(), Files.readAllBytes(journal.toPath()), StandardOpenOption.APPEND);
+                        Files.delete(journal.toPath());
+                    } else {
+                        Files.move(journal.toPath(), rotated.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                    }
+                    out = new FileOutputStream(journal, true);
+                    records = 0;
+                }
+            }
+
+            File temp = File.createTempFile(snapshot.getName(), ".tmp", snapshot.getAbsoluteFile().getParentFile());
+            try (FileOutputStream file = new FileOutputStream(temp);
+                 Writer writer = new BufferedWriter(new OutputStreamWriter(file, StandardCharsets.UTF_8))) {
+                for (String line : lines)
+                    writer.write(line + System.lineSeparator());
+                writer.flush();
+                file.getChannel().force(true);
+            }
+
+            Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(rotated.toPath());
+        } catch (Exception e) {
+            System.err.println("Could not compact the factoid journal:");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops the compactor, compacts one last time and closes the journal.
+     */
+    @Override
+    public void close() {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        compact();
+        synchronized (this) {
+            try {
+                if (out != null)
+                    out.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static String escape(String field) {
+        return field.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String field) {
+        if (field.indexOf('\\') == -1)
+            return field;
+
+        StringBuilder unescaped = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '\\' && i + 1 < field.length()) {
+                char next = field.charAt(++i);
+                unescaped.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+}
@@ -0,0 +1,49 @@
+package commands;
+
+import java.io.IOException;
+
+/**
+ * Where factoids are kept between runs. The factoids themselves live in a
+ * Factoids registry; a FactoidStore fills the registry once on startup and is
+ * then told about every change, which it is expected to persist before the
+ * call returns.
+ */
+interface FactoidStore {
+    /**
+     * Reads all stored factoids into a registry. Called once, before any
+     * change is reported.
+     *
+     * @param factoids the registry to add the factoids to
+     */
+    void load(Factoids factoids) throws IOException;
+
+    /**
+     * Stores a new factoid.
+     */
+    void added(Factoid factoid) throws IOException;
+
+    /**
+     * Stores the new text and host mask of a factoid.
+     */
+    void updated(Factoid factoid) throws IOException;
+
+    /**
+     * Stores a name the factoid gained.
+     */
+    void aliased(Factoid factoid, String alias) throws IOException;
+
+    /**
+     * Stores that the factoid lost a name.
+     */
+    void unaliased(Factoid factoid, String alias) throws IOException;
+
+    /**
+     * Stores that the factoid was removed.
+     */
+    void removed(Factoid factoid) throws IOException;
+
+    /**
+     * Finishes any pending work and releases the files of this store.
+     */
+    void close();
+}
@@ -0,0 +1,186 @@
+package commands;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * All factoids, together with an index of their names. The index is kept up
+ * to date when factoids are added and removed and when a factoid that is part
+ * of this registry gains or loses a name, so finding a factoid by any of its
+ * names takes constant time regardless of how many factoids there are. The
+ * words of their names and texts are kept in a FactoidIndex the same way.
+ * <p>
+ * Every factoid belongs to a scope: the whole bot, one network or one channel
+ * of a network. Each scope has a name index of its own, so the same name can
+ * be used in several scopes; resolve() looks a name up in the scopes of a
+ * channel from the most specific one out, with one probe per scope.
+ */
+class Factoids implements Iterable<Factoid> {
+    /**
+     * The scope of factoids that can be used everywhere.
+     */
+    static final String GLOBAL = "";
+
+    private final Set<Factoid> factoids = new LinkedHashSet<>();
+    private final Map<String, NameIndex<Factoid>> scopes = new HashMap<>();
+    private final FactoidIndex words = new FactoidIndex();
+
+    /**
+     * Returns the scope of factoids that can be used on one network.
+     *
+     * @param network the name of the network, e.g. QuakeNet
+     */
+    static String networkScope(String network) {
+        return network;
+    }
+
+    /**
+     * Returns the scope of factoids that can only be used in one channel.
+     *
+     * @param network the name of the network the channel is on
+     * @param channel the name of the channel, in any case
+     */
+    static String channelScope(String network, String channel) {
+        return network + "/" + channel.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Finds the factoid with the given name in one scope.
+     *
+     * @param scope the scope of the factoid
+     * @param name  the name of the factoid, in any case
+     * @return the factoid, or null if the scope has none by that name
+     */
+    synchronized Factoid find(String scope, CharSequence name) {
+        NameIndex<Factoid> names = scopes.get(scope);
+        return names == null ? null : names.get(name);
+    }
+
+    /**
+     * Finds the factoid a name stands for in the first of several scopes that
+     * has one by that name.
+     *
+     * @param name   the name of the factoid, in any case
+     * @param layers the scopes to look in, most specific first
+     * @return the factoid, or null if none of the scopes has one by that name
+     */
+    synchronized Factoid resolve(CharSequence name, String... layers) {
+        for (String scope : layers) {
+            NameIndex<Factoid> names = scopes.get(scope);
+            Factoid factoid = names == null ? null : names.get(name);
+            if (factoid != null)
+                return factoid;
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether a factoid in any scope has the given name.
+     */
+    synchronized boolean hasName(CharSequence name) {
+        for (NameIndex<Factoid> names : scopes.values())
+            if (names.contains(name))
+                return true;
+        return false;
+    }
+
+    /**
+     * Adds a factoid. Names that already belong to another factoid of the
+     * same scope keep pointing to that factoid.
+     *
+     * @param factoid the factoid to add
+     */
+    synchronized void add(Factoid factoid) {
+        factoids.add(factoid);
+        factoid.setOwner(this);
+
+        NameIndex<Factoid> names = scopes.computeIfAbsent(factoid.getScope(), (scope) -> new NameIndex<>());
+        for (String name : factoid.getNames()) {
+            if (names.contains(name))
+                System.err.println("Factoid name " + name + " is used more than once, ignoring the later one");
+            else
+                names.put(name, factoid);
+            words.addName(factoid, name);
+        }
+        words.addText(factoid, factoid.getText());
+    }
+
+    /**
+     * Removes a factoid and all of its names.
+     *
+     * @param factoid the factoid to remove
+     */
+    synchronized void remove(Factoid factoid) {
+        if (!factoids.remove(factoid))
+            return;
+
+        factoid.setOwner(null);
+        NameIndex<Factoid> names = scopes.get(factoid.getScope());
+        for (String name : factoid.getNames()) {
+            if (names.get(name) == factoid)
+                names.remove(name);
+            words.removeName(factoid, name);
+        }
+        words.removeText(factoid, factoid.getText());
+
+        if (names.size() == 0)
+            scopes.remove(factoid.getScope());
+    }
+
+    /**
+     * Finds the factoids whose names or texts contain the words of a query.
+     *
+     * @param query the words to look for
+     * @return the matching factoids, best first
+     */
+    synchronized List<Factoid> search(String query) {
+        return words.search(query);
+    }
+
+    /**
+     * Called by a factoid of this registry when it gained a name.
+     */
+    synchronized void nameAdded(Factoid factoid, String name) {
+        NameIndex<Factoid> names = scopes.computeIfAbsent(factoid.getScope(), (scope) -> new NameIndex<>());
+        if (!names.contains(name))
+            names.put(name, factoid);
+        words.addName(factoid, name);
+    }
+
+    /**
+     * Called by a factoid of this registry when it lost a name.
+     */
+    synchronized void nameRemoved(Factoid factoid, String name) {
+        NameIndex<Factoid> names = scopes.get(factoid.getScope());
+        if (names != null && names.get(name) == factoid)
+            names.remove(name);
+        words.removeName(factoid, name);
+    }
+
+    /**
+     * Called by a factoid of this registry when its text changed.
+     */
+    synchronized void textChanged(Factoid factoid, String oldText) {
+        words.removeText(factoid, oldText);
+        words.addText(factoid, factoid.getText());
+    }
+
+    synchronized int size() {
+        return factoids.size();
+    }
+
+    /**
+     * Iterates over a copy of the factoids, in the order they were added, so
+     * they can be saved while other commands change them.
+     */
+    @Override
+    public synchronized Iterator<Factoid> iterator() {
+        return new ArrayList<>(factoids).iterator();
+    }
+}
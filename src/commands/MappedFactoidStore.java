@@ -0,0 +1,356 @@
+package commands;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Stores the factoids in a binary log, e.g. factoids.db. Every change appends
+ * the complete new state of the factoid it changed as a single record, or a
+ * record saying it was removed, and the latest record of a factoid wins; a
+ * write costs the same no matter how large the log is. Each record starts
+ * with its length and a CRC-32 of its contents, so a record cut off by a
+ * crash is recognized, and dropped together with anything after it.
+ * <p>
+ * Loading first checks every record with plain reads, and drops an incomplete
+ * tail before any of the log is mapped. Only the latest record of each
+ * factoid is then decoded, through memory-mapped pages of PAGE_SIZE bytes.
+ * At most CACHED_PAGES of those are kept, but a page that is evicted stays
+ * mapped until it is garbage collected, so the pages bound how much of the
+ * log is kept reachable, not how much of it is mapped. Once fewer than half
+ * of the records are still current, loading decodes them with plain reads
+ * instead and rewrites the log with only those, into a temporary file that
+ * is moved in place atomically; the log is never truncated or replaced
+ * while any of it is mapped, which some platforms, e.g. Windows, refuse.
+ */
+class MappedFactoidStore implements FactoidStore {
+    public static final int PAGE_SIZE = 1 << 20;
+    public static final int CACHED_PAGES = 16;
+
+    private static final int MAGIC = 0x46414354;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MIN_RECORD_SIZE = 9;
+    private static final int MIN_COMPACT_RECORDS = 1000;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    private final File file;
+
+    /**
+     * The id of every stored factoid. Ids are handed out in the order
+     * factoids are added, which is also the order they are loaded in.
+     */
+    private final Map<Factoid, Long> ids = new IdentityHashMap<>();
+    private final Map<Long, MappedByteBuffer> pages = new LinkedHashMap<Long, MappedByteBuffer>(CACHED_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, MappedByteBuffer> eldest) {
+            return size() > CACHED_PAGES;
+        }
+    };
+
+    private FileChannel channel;
+    private long mappedSize;
+    private long size;
+    private long nextId;
+
+    /**
+     * Creates a MappedFactoidStore for a log file, which is created when the
+     * store is loaded if it does not exist yet.
+     *
+     * @param file the log file, e.g. factoids.db
+     */
+    MappedFactoidStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns whether the log file exists, so a new store can be filled from
+     * another one first.
+     */
+    boolean exists() {
+        return file.isFile() && file.length() > 0;
+    }
+
+    @Override
+    public synchronized void load(Factoids factoids) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        mappedSize = channel.size();
+
+        if (mappedSize == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            write(header, 0);
+            size = HEADER_SIZE;
+            return;
+        }
+
+        ByteBuffer header = ByteBuffer.wrap(readDirect(0, (int) Math.min(HEADER_SIZE, mappedSize)));
+        if (mappedSize < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION)
+            throw new IOException(file + " is not a factoid store of version " + VERSION);
+
+        // the offset of the latest record of every factoid that was not removed
+        Map<Long, Long> latest = new TreeMap<>();
+        int records = 0;
+        long position = HEADER_SIZE;
+
+        while (position + RECORD_HEADER_SIZE <= mappedSize) {
+            ByteBuffer recordHeader = ByteBuffer.wrap(readDirect(position, RECORD_HEADER_SIZE));
+            int length = recordHeader.getInt();
+            int checksum = recordHeader.getInt();
+            if (length < MIN_RECORD_SIZE || position + RECORD_HEADER_SIZE + length > mappedSize)
+                break;
+
+            ByteBuffer record = ByteBuffer.wrap(readDirect(position + RECORD_HEADER_SIZE, length));
+            if (checksum(record.array()) != checksum)
+                break;
+
+            byte type = record.get();
+            long id = record.getLong();
+            if (type == PUT)
+                latest.put(id, position);
+            else
+                latest.remove(id);
+
+            nextId = Math.max(nextId, id + 1);
+            records++;
+            position += RECORD_HEADER_SIZE + length;
+        }
+
+        if (position < mappedSize) {
+            System.err.println("Dropping " + (mappedSize - position) + " bytes of incomplete records from " + file);
+            channel.truncate(position);
+            mappedSize = position;
+        }
+        size = position;
+
+        // the log is about to be replaced, so it must not be mapped
+        boolean compact = records >= MIN_COMPACT_RECORDS && records > 2 * latest.size();
+
+        for (Map.Entry<Long, Long> entry : latest.entrySet()) {
+            long start = entry.getValue();
+            int length = ByteBuffer.wrap(readDirect(start, 4)).getInt();
+            byte[] body = compact ? readDirect(start + RECORD_HEADER_SIZE, length) : read(start + RECORD_HEADER_SIZE, length);
+            Factoid factoid = decode(body);
+            factoids.add(factoid);
+            ids.put(factoid, entry.getKey());
+        }
+        pages.clear();
+
+        if (compact)
+            compact();
+    }
+
+    @Override
+    public synchronized void added(Factoid factoid) throws IOException {
+        ids.put(factoid, nextId++);
+        append(encode(PUT, ids.get(factoid), factoid));
+    }
+
+    /**
+     * Stores many new factoids at once, e.g. when filling a new store from
+     * another one, syncing the log only once at the end.
+     *
+     * @param factoids the factoids to store
+     */
+    synchronized void addAll(Iterable<Factoid> factoids) throws IOException {
+        for (Factoid factoid : factoids) {
+            ids.put(factoid, nextId++);
+            ByteBuffer record = encode(PUT, ids.get(factoid), factoid);
+            write(record, size);
+            size += record.limit();
+        }
+        channel.force(false);
+    }
+
+    @Override
+    public synchronized void updated(Factoid factoid) throws IOException {
+        put(factoid);
+    }
+
+    @Override
+    public synchronized void aliased(Factoid factoid, String alias) throws IOException {
+        put(factoid);
+    }
+
+    @Override
+    public synchronized void unaliased(Factoid factoid, String alias) throws IOException {
+        put(factoid);
+    }
+
+    @Override
+    public synchronized void removed(Factoid factoid) throws IOException {
+        Long id = ids.remove(factoid);
+        if (id != null)
+            append(encode(DELETE, id, null));
+    }
+
+    private void put(Factoid factoid) throws IOException {
+        Long id = ids.get(factoid);
+        if (id == null)
+            added(factoid);
+        else
+            append(encode(PUT, id, factoid));
+    }
+
+    private void append(ByteBuffer record) throws IOException {
+        write(record, size);
+        size += record.limit();
+        channel.force(false);
+    }
+
+    private void write(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+        buffer.rewind();
+    }
+
+    /**
+     * Rewrites the log with only the latest record of every factoid.
+     */
+    private void compact() throws IOException {
+        File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        List<Map.Entry<Factoid, Long>> live = new ArrayList<>(ids.entrySet());
+        live.sort(Map.Entry.comparingByValue());
+
+        try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            while (header.hasRemaining())
+                out.write(header);
+
+            for (Map.Entry<Factoid, Long> entry : live) {
+                ByteBuffer record = encode(PUT, entry.getValue(), entry.getKey());
+                while (record.hasRemaining())
+                    out.write(record);
+            }
+            out.force(true);
+        }
+
+        channel.close();
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        size = channel.size();
+    }
+
+    /**
+     * Reads bytes of the log through the page cache. A range may span pages.
+     */
+    private byte[] read(long position, int length) throws IOException {
+        byte[] bytes = new byte[length];
+
+        for (int done = 0; done < length; ) {
+            long page = (position + done) / PAGE_SIZE;
+            int offset = (int) ((position + done) % PAGE_SIZE);
+            ByteBuffer buffer = page(page).duplicate();
+            int count = Math.min(length - done, buffer.limit() - offset);
+
+            buffer.position(offset);
+            buffer.get(bytes, done, count);
+            done += count;
+        }
+        return bytes;
+    }
+
+    /**
+     * Reads bytes of the log into a heap buffer, without mapping any of it.
+     */
+    private byte[] readDirect(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException("Unexpected end of " + file);
+        }
+        return buffer.array();
+    }
+
+    private MappedByteBuffer page(long page) throws IOException {
+        MappedByteBuffer buffer = pages.get(page);
+        if (buffer == null) {
+            long start = page * PAGE_SIZE;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(PAGE_SIZE, mappedSize - start));
+            pages.put(page, buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Encodes a record: its length, the CRC-32 of its contents, the type, the
+     * id of the factoid and, for PUT, the names, host mask, text and scope.
+     */
+    private static ByteBuffer encode(byte type, long id, Factoid factoid) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(type);
+        out.writeLong(id);
+
+        if (type == PUT) {
+            String[] names = factoid.getNames().toArray(new String[0]);
+            out.writeInt(names.length);
+            for (String name : names)
+                writeString(out, name);
+            writeString(out, factoid.getHostMask());
+            writeString(out, factoid.getText());
+            writeString(out, factoid.getScope());
+        }
+
+        byte[] body = bytes.toByteArray();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + body.length);
+        record.putInt(body.length).putInt(checksum(body)).put(body);
+        record.flip();
+        return record;
+    }
+
+    private static Factoid decode(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        in.readByte();
+        in.readLong();
+
+        String[] names = new String[in.readInt()];
+        for (int i = 0; i < names.length; i++)
+            names[i] = readString(in);
+        String hostMask = readString(in);
+        String text = readString(in);
+
+        // records written before there were scopes end here
+        String scope = in.available() > 0 ? readString(in) : Factoids.GLOBAL;
+        return new Factoid(scope, names, hostMask, text);
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public synchronized void close() {
+        pages.clear();
+        try {
+            if (channel != null)
+                channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package commands;
+
+import botster.ProbeTable;
+
+/**
+ * Maps names to values, ignoring case the way String.equalsIgnoreCase does.
+ * Names are folded to lower case once, when they are put; a lookup folds the
+ * name it is given character by character while hashing and comparing it, so
+ * it does not allocate anything.
+ * <p>
+ * The entries are kept in a ProbeTable under the hash of the folded name.
+ *
+ * @param <V> the type of the values
+ */
+class NameIndex<V> {
+    private static final int MIN_CAPACITY = 16;
+
+    private final ProbeTable<V> table = new ProbeTable<>(MIN_CAPACITY);
+
+    /**
+     * Returns the value of a name.
+     *
+     * @param name the name, in any case
+     * @return the value, or null if name is not in the index
+     */
+    V get(CharSequence name) {
+        int slot = find(name, hash(name));
+        return slot == -1 ? null : table.value(slot);
+    }
+
+    /**
+     * Returns whether a name is in the index.
+     */
+    boolean contains(CharSequence name) {
+        return find(name, hash(name)) != -1;
+    }
+
+    /**
+     * Sets the value of a name, replacing any value the name had in any case.
+     *
+     * @param name  the name
+     * @param value the value
+     * @return the previous value, or null
+     */
+    V put(String name, V value) {
+        int hash = hash(name);
+        int slot = find(name, hash);
+
+        if (slot != -1) {
+            V previous = table.value(slot);
+            table.setValue(slot, value);
+            return previous;
+        }
+
+        table.add(hash, fold(name), value);
+        return null;
+    }
+
+    /**
+     * Removes a name.
+     *
+     * @param name the name, in any case
+     * @return the value the name had, or null
+     */
+    V remove(CharSequence name) {
+        int slot = find(name, hash(name));
+        if (slot == -1)
+            return null;
+
+        V previous = table.value(slot);
+        table.delete(slot);
+        return previous;
+    }
+
+    int size() {
+        return table.size();
+    }
+
+    private int find(CharSequence name, int hash) {
+        for (int slot = table.find(hash); slot != -1; slot = table.findNext(hash, slot))
+            if (matches(table.key(slot), name))
+                return slot;
+        return -1;
+    }
+
+    /**
+     * Compares a folded key with a name in any case.
+     */
+    private static boolean matches(String key, CharSequence name) {
+        if (key.length() != name.length())
+            return false;
+
+        for (int i = 0; i < key.length(); i++)
+            if (key.charAt(i) != fold(name.charAt(i)))
+                return false;
+        return true;
+    }
+
+    private static int hash(CharSequence name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++)
+            hash = 31 * hash + fold(name.charAt(i));
+
+        // spread the bits, since only the lowest ones pick the slot
+        hash *= 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Folds a name to lower case character by character, which unlike
+     * String.toLowerCase never changes its length and does not depend on the
+     * default locale.
+     */
+    static String fold(CharSequence name) {
+        char[] folded = new char[name.length()];
+        for (int i = 0; i < folded.length; i++)
+            folded[i] = fold(name.charAt(i));
+        return new String(folded);
+    }
+
+    /**
+     * Folds a character the way String.equalsIgnoreCase compares it.
+     */
+    static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
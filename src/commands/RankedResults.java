@@ -0,0 +1,107 @@
+package commands;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the k best search results seen so far, together with the number of
+ * results offered in total. Results are ranked by a score, lower being
+ * better; see ApiIndex.score().
+ * <p>
+ * The kept results form a binary heap with the worst of them at the root, so
+ * a result that does not make it into the top k is rejected after a single
+ * comparison and nothing is allocated once the heap is full.
+ */
+class RankedResults {
+    private final long[] heap;
+    private int size;
+    private int total;
+
+    /**
+     * Creates a new instance of RankedResults.
+     *
+     * @param k the number of results to keep
+     */
+    RankedResults(int k) {
+        heap = new long[k];
+    }
+
+    /**
+     * Counts a result and keeps it if it is among the k best so far.
+     *
+     * @param score the score of the result, which also identifies it
+     */
+    void offer(long score) {
+        total++;
+
+        if (size < heap.length) {
+            heap[size] = score;
+            siftUp(size++);
+        } else if (size > 0 && score < heap[0]) {
+            heap[0] = score;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Counts the results of another RankedResults and keeps those among the
+     * k best so far, e.g. to combine the results of several searches that ran
+     * in parallel.
+     *
+     * @param other the results to add
+     */
+    void addAll(RankedResults other) {
+        for (int i = 0; i < other.size; i++)
+            offer(other.heap[i]);
+        total += other.total - other.size;
+    }
+
+    /**
+     * Returns the number of results offered.
+     */
+    int total() {
+        return total;
+    }
+
+    boolean isEmpty() {
+        return total == 0;
+    }
+
+    /**
+     * Returns the scores of the kept results, best first.
+     */
+    long[] scores() {
+        long[] sorted = Arrays.copyOf(heap, size);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (heap[parent] >= heap[i])
+                return;
+            swap(parent, i);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int largest = i;
+            for (int child = 2 * i + 1; child <= 2 * i + 2 && child < size; child++)
+                if (heap[child] > heap[largest])
+                    largest = child;
+
+            if (largest == i)
+                return;
+            swap(i, largest);
+            i = largest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long value = heap[a];
+        heap[a] = heap[b];
+        heap[b] = value;
+    }
+}
@@ -0,0 +1,136 @@
+package commands;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parameter and return types of methods, in a normalized form that both the
+ * different javadoc anchor styles and search queries are reduced to: simple,
+ * lower-case type names without type arguments, with varargs written as an
+ * array. String.format(java.lang.String,java.lang.Object...) has the
+ * parameters (string,object[]).
+ * <p>
+ * A query is written like a method declaration, with an optional name, the
+ * parameter types and an optional return type: valueOf(char[]),
+ * String.valueOf(char[]) or (String,int)-&gt;boolean.
+ */
+class Signature {
+    /**
+     * The lower-case method name, possibly preceded by its class, or an empty
+     * String if any method will do.
+     */
+    final String name;
+
+    /**
+     * The normalized parameter list, including parentheses.
+     */
+    final String parameters;
+
+    /**
+     * The normalized return type, or null if any return type will do.
+     */
+    final String returnType;
+
+    private Signature(String name, String parameters, String returnType) {
+        this.name = name;
+        this.parameters = parameters;
+        this.returnType = returnType;
+    }
+
+    /**
+     * Returns whether a search term is a signature query rather than a name.
+     */
+    static boolean isQuery(String term) {
+        return term.indexOf('(') != -1 && term.indexOf(')') > term.indexOf('(');
+    }
+
+    /**
+     * Parses a signature query.
+     *
+     * @param query the query, e.g. (String,int)-&gt;boolean
+     * @return the Signature the query asks for
+     */
+    static Signature parse(String query) {
+        int open = query.indexOf('(');
+        int close = query.lastIndexOf(')');
+        int arrow = query.indexOf("->", close);
+
+        String name = query.substring(0, open).trim().toLowerCase();
+        String returnType = arrow == -1 ? null : type(query.substring(arrow + 2));
+        return new Signature(name, parameters(query.substring(open + 1, close), ","), returnType);
+    }
+
+    /**
+     * Returns the normalized parameters of a javadoc member anchor, which is
+     * written as name-int-char:A- in Java 8, as name(int, char[]) before and as
+     * name(int,char[]) after.
+     *
+     * @param anchor the anchor of a method
+     * @return the normalized parameter list, or null if anchor is not that of
+     * a method
+     */
+    static String anchorParameters(String anchor) {
+        int open = anchor.indexOf('(');
+        if (open != -1 && anchor.endsWith(")"))
+            return parameters(anchor.substring(open + 1, anchor.length() - 1), ",");
+
+        int dash = anchor.indexOf('-');
+        if (dash != -1 && anchor.endsWith("-"))
+            return parameters(anchor.substring(dash + 1, anchor.length() - 1), "-");
+
+        return null;
+    }
+
+    private static String parameters(String list, String separator) {
+        List<String> types = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+
+        // commas inside type arguments, as in Map<K,V>, do not separate parameters
+        for (int i = 0; i <= list.length(); i++) {
+            if (i == list.length() || depth == 0 && list.startsWith(separator, i)) {
+                String type = list.substring(start, i).trim();
+                if (!type.isEmpty())
+                    types.add(type(type));
+                start = i + separator.length();
+            } else if (list.charAt(i) == '<') {
+                depth++;
+            } else if (list.charAt(i) == '>') {
+                depth--;
+            }
+        }
+        return "(" + String.join(",", types) + ")";
+    }
+
+    /**
+     * Normalizes a single type: java.util.Map.Entry&lt;K,V&gt; becomes entry,
+     * char:A becomes char[] and java.lang.Object... becomes object[].
+     *
+     * @param type the type as it appears in an anchor or query
+     * @return the normalized type
+     */
+    static String type(String type) {
+        StringBuilder name = new StringBuilder();
+        int depth = 0;
+
+        for (int i = 0; i < type.length(); i++) {
+            char c = type.charAt(i);
+            if (c == '<')
+                depth++;
+            else if (c == '>')
+                depth--;
+            else if (depth == 0 && !Character.isWhitespace(c))
+                name.append(c);
+        }
+
+        String dimensions = "";
+        String base = name.toString().replace(":A", "[]").replace("...", "[]");
+        int bracket = base.indexOf('[');
+        if (bracket != -1) {
+            dimensions = base.substring(bracket);
+            base = base.substring(0, bracket);
+        }
+
+        return (base.substring(base.lastIndexOf('.') + 1) + dimensions).toLowerCase();
+    }
+}
@@ -0,0 +1,329 @@
+package commands;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The source files of a &lt;src&gt; API, read from a src.zip or a directory
+ * of sources, e.g. the lib/src.zip of a JDK. Only the names of the files are
+ * read up front; a file is read when one of its lines is asked for, from its
+ * own zip entry or by memory-mapping it, and indexed into the offsets of its
+ * lines and the lines its members are declared on. The most recently used
+ * files are cached, so the sources as a whole are never held in memory.
+ * <p>
+ * Archives of Java 9 and later put each module in a directory of its own;
+ * those directories are left out of the paths files are looked up by.
+ */
+class SourceLines {
+    public static final int CACHE_SIZE = 64;
+    public static final int MAX_EXCERPT_LENGTH = 150;
+
+    private static final String MODIFIERS = "(?:@[\\w.]+(?:\\([^)]*\\))?\\s+)*"
+            + "(?:(?:public|protected|private|static|final|abstract|synchronized|native|default|transient|volatile|strictfp)\\s+)*"
+            + "(?:<.*>\\s+)?";
+    private static final Pattern MEMBER = Pattern.compile("^\\s*" + MODIFIERS + "([\\w$.]+(?:<.*>)?(?:\\s*\\[\\s*\\])*)\\s+(\\w+)\\s*(?:[(=;,\\[]|$)");
+    private static final Pattern CONSTRUCTOR = Pattern.compile("^\\s*" + MODIFIERS + "(\\w+)\\s*\\(");
+    private static final Pattern TYPE = Pattern.compile("\\b(class|interface|enum)\\s+(\\w+)");
+    private static final Set<String> STATEMENTS = new HashSet<>(Arrays.asList(
+            "return", "new", "throw", "else", "case", "package", "import", "extends", "implements", "throws", "class", "interface", "enum"));
+
+    private final File location;
+    private final ZipFile zip;
+
+    /**
+     * The zip entry or file of every source file, by its path relative to
+     * its package root, e.g. java/lang/String.java.
+     */
+    private final Map<String, String> paths;
+    private final Map<String, Source> cache = new LinkedHashMap<String, Source>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Source> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private SourceLines(File location, ZipFile zip, Map<String, String> paths) {
+        this.location = location;
+        this.zip = zip;
+        this.paths = paths;
+    }
+
+    /**
+     * Opens a src.zip or source directory and lists the files in it.
+     *
+     * @param location the zip file or directory
+     * @return the SourceLines of the files in location
+     */
+    static SourceLines open(File location) throws IOException {
+        Map<String, String> paths = new TreeMap<>();
+
+        if (location.isDirectory()) {
+            Path root = location.toPath();
+            try (Stream<Path> files = Files.walk(root)) {
+                files.filter((path) -> path.toString().endsWith(".java"))
+                        .forEach((path) -> paths.put(relativePath(root.relativize(path).toString().replace(File.separatorChar, '/')), path.toString()));
+            }
+            return new SourceLines(location, null, paths);
+        }
+
+        ZipFile zip = new ZipFile(location);
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            String name = entries.nextElement().getName();
+            if (name.endsWith(".java"))
+                paths.put(relativePath(name), name);
+        }
+        return new SourceLines(location, zip, paths);
+    }
+
+    /**
+     * Strips the module directory from a path, if it has one. Package
+     * directories never contain a dot, module directories usually do.
+     */
+    private static String relativePath(String path) {
+        int slash = path.indexOf('/');
+        return slash != -1 && path.substring(0, slash).indexOf('.') != -1 ? path.substring(slash + 1) : path;
+    }
+
+    /**
+     * Returns the paths of all source files, relative to their package root,
+     * e.g. java/lang/String.java.
+     */
+    Set<String> paths() {
+        return Collections.unmodifiableSet(paths.keySet());
+    }
+
+    /**
+     * Returns the indexed source file of a class.
+     *
+     * @param pack      the package of the class
+     * @param className the name of the class
+     * @return the Source, or null if there is no such file
+     */
+    Source get(String pack, String className) throws IOException {
+        String path = (pack.isEmpty() ? "" : pack.replace('.', '/') + "/") + className + ".java";
+
+        synchronized (cache) {
+            Source source = cache.get(path);
+            if (source != null)
+                return source;
+        }
+
+        String file = paths.get(path);
+        if (file == null)
+            return null;
+
+        Source source = new Source(read(file));
+        synchronized (cache) {
+            cache.put(path, source);
+        }
+        return source;
+    }
+
+    private ByteBuffer read(String file) throws IOException {
+        if (zip == null) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+
+        ZipEntry entry = zip.getEntry(file);
+        try (InputStream in = zip.getInputStream(entry)) {
+            // one byte more than needed, so a complete read does not grow the array
+            byte[] bytes = new byte[entry.getSize() < 0 ? 8192 : (int) entry.getSize() + 1];
+            int length = 0;
+
+            for (int read; (read = in.read(bytes, length, bytes.length - length)) != -1; ) {
+                length += read;
+                if (length == bytes.length)
+                    bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, 8192));
+            }
+            return ByteBuffer.wrap(bytes, 0, length).slice();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return location + " (" + paths.size() + " files)";
+    }
+
+    /**
+     * A single source file: where each of its lines starts and on which
+     * lines the members of its classes are declared.
+     */
+    static class Source {
+        private final ByteBuffer content;
+        private final int[] lineStarts;
+
+        /**
+         * The declarations of members and nested types by lower-case name;
+         * constructors are declared under the name of their class. Each is
+         * stored as how deeply its class is nested, followed by its line.
+         */
+        private final Map<String, List<Long>> declarations = new HashMap<>();
+
+        Source(ByteBuffer content) {
+            this.content = content;
+
+            int count = 1;
+            for (int i = 0; i < content.limit(); i++)
+                if (content.get(i) == '\n')
+                    count++;
+
+            lineStarts = new int[count + 1];
+            for (int i = 0, line = 1; i < content.limit(); i++)
+                if (content.get(i) == '\n')
+                    lineStarts[line++] = i + 1;
+            lineStarts[count] = content.limit() + 1;
+
+            scan();
+        }
+
+        /**
+         * Finds the declarations of members. Comments and literals are blanked
+         * out first, then braces are followed to know whether a line is
+         * directly inside the body of a class, where only member declarations
+         * can be.
+         */
+        private void scan() {
+            Deque<Boolean> bodies = new ArrayDeque<>();
+            Deque<String> types = new ArrayDeque<>();
+            StringBuilder statement = new StringBuilder();
+            boolean comment = false;
+
+            for (int number = 1; number < lineStarts.length; number++) {
+                String line = line(number);
+                StringBuilder code = new StringBuilder(line.length());
+                char quote = 0;
+
+                for (int i = 0; i < line.length(); i++) {
+                    char c = line.charAt(i);
+                    char next = i + 1 < line.length() ? line.charAt(i + 1) : 0;
+
+                    if (comment) {
+                        if (c == '*' && next == '/') {
+                            comment = false;
+                            i++;
+                        }
+                        code.append(' ');
+                    } else if (quote != 0) {
+                        if (c == '\\')
+                            i++;
+                        else if (c == quote)
+                            quote = 0;
+                        code.append(' ');
+                    } else if (c == '/' && next == '*') {
+                        comment = true;
+                        i++;
+                        code.append(' ');
+                    } else if (c == '/' && next == '/') {
+                        break;
+                    } else {
+                        if (c == '"' || c == '\'')
+                            quote = c;
+                        code.append(quote == 0 ? c : ' ');
+                    }
+                }
+
+                if (Boolean.TRUE.equals(bodies.peek()))
+                    declare(code, types.peek(), types.size(), number);
+
+                for (int i = 0; i < code.length(); i++) {
+                    char c = code.charAt(i);
+
+                    if (c == '{') {
+                        Matcher type = TYPE.matcher(statement);
+                        boolean isType = type.find();
+                        bodies.push(isType);
+                        types.push(isType ? type.group(2) : types.isEmpty() ? "" : types.peek());
+                        statement.setLength(0);
+                    } else if (c == '}') {
+                        bodies.poll();
+                        types.poll();
+                        statement.setLength(0);
+                    } else if (c == ';') {
+                        statement.setLength(0);
+                    } else {
+                        statement.append(c);
+                    }
+                }
+                statement.append(' ');
+            }
+        }
+
+        private void declare(CharSequence code, String className, int nesting, int number) {
+            long declaration = (long) nesting << 32 | number;
+
+            Matcher type = TYPE.matcher(code);
+            if (type.find()) {
+                declarations.computeIfAbsent(type.group(2).toLowerCase(), (name) -> new ArrayList<>()).add(declaration);
+                return;
+            }
+
+            Matcher member = MEMBER.matcher(code);
+            if (member.find() && !STATEMENTS.contains(member.group(1))) {
+                declarations.computeIfAbsent(member.group(2).toLowerCase(), (name) -> new ArrayList<>()).add(declaration);
+                return;
+            }
+
+            Matcher constructor = CONSTRUCTOR.matcher(code);
+            if (constructor.find() && constructor.group(1).equals(className))
+                declarations.computeIfAbsent(className.toLowerCase(), (name) -> new ArrayList<>()).add(declaration);
+        }
+
+        /**
+         * Returns the lines a member is declared on, e.g. one per overload of
+         * a method. Members of the outermost class come first, then those of
+         * nested classes.
+         *
+         * @param member the name of the member, or of the class for its
+         *               constructors
+         * @return the line numbers, starting at 1
+         */
+        List<Integer> declarations(String member) {
+            return declarations.getOrDefault(member.toLowerCase(), Collections.emptyList()).stream()
+                    .sorted().map((declaration) -> (int) (long) declaration).collect(Collectors.toList());
+        }
+
+        /**
+         * Returns a line of the file.
+         *
+         * @param number the line number, starting at 1
+         * @return the line, without its line break
+         */
+        String line(int number) {
+            int start = lineStarts[number - 1];
+            int end = Math.max(start, lineStarts[number] - 1);
+            if (end > start && content.get(end - 1) == '\r')
+                end--;
+
+            byte[] bytes = new byte[end - start];
+            for (int i = 0; i < bytes.length; i++)
+                bytes[i] = content.get(start + i);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Returns a line of the file as a short excerpt, trimmed and cut off
+         * at MAX_EXCERPT_LENGTH characters.
+         */
+        String excerpt(int number) {
+            String line = line(number).trim();
+            return line.length() > MAX_EXCERPT_LENGTH ? line.substring(0, MAX_EXCERPT_LENGTH) + "..." : line;
+        }
+    }
+}
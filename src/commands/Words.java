@@ -0,0 +1,91 @@
+package commands;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits javadoc summaries, names and full-text queries into the words the
+ * full-text index is made of: lower-case, without the most common English
+ * words and with plurals reduced to their singular, so "maps" finds "map".
+ */
+final class Words {
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "if", "in", "into", "is", "it", "its",
+            "of", "on", "or", "that", "the", "this", "to", "which", "with"));
+
+    private Words() {
+    }
+
+    /**
+     * Returns the words of a text, in order.
+     *
+     * @param text the text, without markup
+     * @return the normalized words
+     */
+    static List<String> of(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+
+        for (int i = 0; i <= text.length(); i++) {
+            boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+
+            if (letter && start == -1) {
+                start = i;
+            } else if (!letter && start != -1) {
+                add(words, text.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Returns the words of a name, which are its camel humps: HashMap is made
+     * of hash and map, URLConnection of url and connection.
+     *
+     * @param name the name as it is written in the API
+     * @return the normalized words
+     */
+    static List<String> ofName(String name) {
+        List<String> words = new ArrayList<>();
+        int start = 0;
+
+        for (int i = 1; i <= name.length(); i++) {
+            boolean end = i == name.length()
+                    || !Character.isLetterOrDigit(name.charAt(i))
+                    || Character.isUpperCase(name.charAt(i)) && !Character.isUpperCase(name.charAt(i - 1))
+                    || Character.isUpperCase(name.charAt(i - 1)) && Character.isUpperCase(name.charAt(i))
+                    && i + 1 < name.length() && Character.isLowerCase(name.charAt(i + 1));
+
+            if (end) {
+                if (start < i && Character.isLetterOrDigit(name.charAt(start)))
+                    add(words, name.substring(start, i));
+                start = i < name.length() && !Character.isLetterOrDigit(name.charAt(i)) ? i + 1 : i;
+            }
+        }
+        return words;
+    }
+
+    private static void add(List<String> words, String word) {
+        word = word.toLowerCase();
+        if (!STOP_WORDS.contains(word))
+            words.add(stem(word));
+    }
+
+    /**
+     * Reduces plurals to their singular: entries becomes entry, classes class
+     * and maps map. Words ending in ss or us are left alone.
+     */
+    private static String stem(String word) {
+        if (word.length() <= 3 || !word.endsWith("s") || word.endsWith("ss") || word.endsWith("us"))
+            return word;
+        if (word.endsWith("ies"))
+            return word.substring(0, word.length() - 3) + "y";
+        if (word.endsWith("sses") || word.endsWith("shes") || word.endsWith("ches") || word.endsWith("xes"))
+            return word.substring(0, word.length() - 2);
+        return word.substring(0, word.length() - 1);
+    }
+}